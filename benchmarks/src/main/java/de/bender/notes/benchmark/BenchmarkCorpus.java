@@ -0,0 +1,94 @@
+package de.bender.notes.benchmark;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.CorpusGenerator;
+import io.quarkus.qute.Engine;
+import io.quarkus.qute.ReflectionValueResolver;
+import io.quarkus.qute.Template;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Notes-dir shared by all benchmarks - generated once per size by the {@link CorpusGenerator} (and kept in
+ * {@code java.io.tmpdir} for subsequent runs, since generation is deterministic). The {@link Config} is pointed to
+ * that dir by system-properties, so the benchmarks never touch the real notes.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkCorpus {
+
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final Engine ENGINE = Engine.builder()
+            .addDefaults()
+            .addValueResolver(new ReflectionValueResolver())
+            .build();
+
+    @Param({"100", "10000", "100000"})
+    public int notes;
+
+    public Path documentPath;
+    public Path outputPath;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        Path base = Path.of(System.getProperty("java.io.tmpdir"), "notes-benchmarks");
+        documentPath = base.resolve("corpus-" + notes);
+        outputPath = base.resolve(notes + "-output");
+
+        if (Files.notExists(documentPath.resolve(COMPLETE_MARKER))) {
+            var shape = new CorpusGenerator.Shape(42, LocalDate.of(2000, 1, 1), 0, notes, 4, 120, 0.05, 0.3, 1000);
+            new CorpusGenerator(template("note"), shape).generate(documentPath, "todo.md");
+            Files.writeString(documentPath.resolve(COMPLETE_MARKER), "");
+        }
+
+        // the config-file is looked up within the user's home - don't let the real one interfere
+        Path home = Files.createDirectories(base.resolve("home"));
+        Files.createDirectories(home.resolve(".config"));
+        Files.writeString(home.resolve(".config").resolve("notes"), "TODO_FILE_NAME=todo.md\n");
+        System.setProperty("user.home", home.toString());
+        System.setProperty("notes.doc.dir", documentPath.toString());
+        System.setProperty("notes.output.dir", outputPath.toString());
+    }
+
+    /**
+     * @return a fresh config (so nothing is cached from a previous trial) pointing to this corpus
+     */
+    public Config config() {
+        return new Config();
+    }
+
+    /**
+     * @return all notes of this corpus - sorted by name
+     */
+    public List<Path> files() {
+        try (Stream<Path> paths = Files.list(documentPath)) {
+            return paths.filter(p -> p.toString().endsWith(".md")).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the given template as packaged within the notes-artifact
+     */
+    public static Template template(String name) throws IOException {
+        try (InputStream content = BenchmarkCorpus.class.getResourceAsStream("/templates/" + name + ".txt")) {
+            if (content == null) {
+                throw new IllegalStateException("Template '" + name + "' not found on classpath");
+            }
+            return ENGINE.parse(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
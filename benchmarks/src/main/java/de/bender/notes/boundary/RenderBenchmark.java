@@ -0,0 +1,80 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.benchmark.BenchmarkCorpus;
+import de.bender.notes.control.Corpus;
+import de.bender.notes.control.MarkdownService;
+import de.bender.notes.control.RenderManifest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of parsed notes to HTML-files (markdown-rendering plus template plus write) - the whole corpus at once
+ * as done by `notes render` as well as note by note (to get the per-note latency).
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class RenderBenchmark {
+
+    @Param({"4"})
+    public int threads;
+
+    private RenderCmd renderCmd;
+    private ForkJoinPool workers;
+    private List<Corpus.Note> notes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkCorpus corpus) throws Exception {
+        MarkdownService markdown = new MarkdownService();
+        renderCmd = new RenderCmd();
+        renderCmd.config = corpus.config();
+        renderCmd.markdown = markdown;
+        renderCmd.render = BenchmarkCorpus.template("render");
+        renderCmd.threads = threads;
+
+        // same layout as created by `notes render`
+        Files.createDirectories(corpus.outputPath.resolve("Notes.docset/Contents/Resources/Documents"));
+
+        workers = new ForkJoinPool(threads);
+        notes = Corpus.scan(corpus.documentPath, RenderManifest.empty(), markdown, workers).notes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workers.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<String> renderMarkdownFiles() throws InterruptedException {
+        return renderCmd.renderMarkdownFiles(notes, workers);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Path renderMarkdownFile() throws IOException {
+        return renderCmd.renderMarkdownFile(notes.get(next++ % notes.size()));
+    }
+}
@@ -0,0 +1,48 @@
+package de.bender.notes.control;
+
+import de.bender.notes.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading config-values - every access validates the cached snapshot against the config-file. The size of the
+ * corpus is irrelevant here.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBenchmark {
+
+    private Config config;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkCorpus corpus) {
+        config = corpus.config();
+    }
+
+    @Benchmark
+    public String readConfigValue() {
+        return config.readConfigValue("NOTES_DOC_DIR");
+    }
+
+    @Benchmark
+    public Path getDocumentPath() {
+        return config.getDocumentPath();
+    }
+}
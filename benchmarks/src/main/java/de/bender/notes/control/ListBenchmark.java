@@ -0,0 +1,76 @@
+package de.bender.notes.control;
+
+import de.bender.notes.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headline-extraction as done by `notes list` - with an up-to-date cache (the common case) and from scratch (every
+ * note has to be read).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ListBenchmark {
+
+    private HeadlineCache headlineCache;
+    private Config config;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkCorpus corpus) throws Exception {
+        config = corpus.config();
+        headlineCache = headlineCache(config);
+        headlineCache.headlines();
+    }
+
+    /*
+     * Changes aren't watched - so every call validates the cache (like the CLI does)
+     */
+    private static HeadlineCache headlineCache(Config config) {
+        HeadlineCache headlineCache = new HeadlineCache();
+        headlineCache.config = config;
+        headlineCache.changes = new NoteChanges();
+        return headlineCache;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public List<HeadlineCache.NoteHeadlines> headlinesCached() throws Exception {
+        return headlineCache.headlines();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 10)
+    public List<HeadlineCache.NoteHeadlines> headlinesUncached(Uncached uncached) throws Exception {
+        return headlineCache.headlines();
+    }
+
+    /**
+     * Removes the cache before every invocation
+     */
+    @State(Scope.Benchmark)
+    public static class Uncached {
+
+        @Setup(Level.Invocation)
+        public void dropCache(ListBenchmark benchmark) throws Exception {
+            Files.deleteIfExists(benchmark.config.getIndexPath().resolve("headlines.idx"));
+            benchmark.headlineCache = headlineCache(benchmark.config);     // nothing resident either
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.bender.notes.control;
+
+import de.bender.notes.benchmark.BenchmarkCorpus;
+import org.commonmark.node.AbstractVisitor;
+import org.commonmark.node.Heading;
+import org.commonmark.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-note cost of the markdown-pipeline - parsing, rendering (including the {@link MarkdownService.CustomHtmlRenderer}
+ * for images and headings) and the literal-text extraction of headings. Works on a sample of the corpus (the
+ * per-note cost doesn't depend on the number of notes).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarkdownBenchmark {
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final MarkdownService markdown = new MarkdownService();
+    private List<String> sources;
+    private List<Node> documents;
+    private List<Heading> headings;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkCorpus corpus) throws Exception {
+        sources = new ArrayList<>();
+        for (Path file : corpus.files().subList(0, Math.min(SAMPLE_SIZE, corpus.notes))) {
+            sources.add(Files.readString(file));
+        }
+        documents = sources.stream().map(markdown::parse).toList();
+        headings = new ArrayList<>();
+        documents.forEach(d -> d.accept(new AbstractVisitor() {
+            @Override
+            public void visit(Heading heading) {
+                headings.add(heading);
+            }
+        }));
+    }
+
+    @Benchmark
+    public Node parse() {
+        return markdown.parse(sources.get(next++ % sources.size()));
+    }
+
+    @Benchmark
+    public String render() {
+        return markdown.render(documents.get(next++ % documents.size()));
+    }
+
+    @Benchmark
+    public String toLiteralText() {
+        return MarkdownService.toLiteralText(headings.get(next++ % headings.size()));
+    }
+}
@@ -0,0 +1,67 @@
+package de.bender.notes.control;
+
+import de.bender.notes.benchmark.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * `notes search` - scanning all notes (like `--no-index` and `--regex` do) compared to a lookup in the (warm)
+ * search-index.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+
+    @Param({"4"})
+    public int threads;
+
+    private List<Path> files;
+    private SearchIndex searchIndex;
+    private NeedleMatcher literal;
+    private NeedleMatcher regex;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkCorpus corpus) throws Exception {
+        files = corpus.files();
+        searchIndex = new SearchIndex();
+        searchIndex.config = corpus.config();
+        searchIndex.changes = new NoteChanges();    // not watching - so every lookup validates the index, like the CLI
+        searchIndex.update();
+        literal = NeedleMatcher.literal(List.of("think"));
+        regex = NeedleMatcher.regex("th(i|a)nk\\b");
+    }
+
+    @Benchmark
+    public NoteScanner.Summary scanLiteral(Blackhole blackhole) throws InterruptedException {
+        return new NoteScanner(threads, 0, false).scan(files, literal, blackhole::consume);
+    }
+
+    @Benchmark
+    public NoteScanner.Summary scanRegex(Blackhole blackhole) throws InterruptedException {
+        return new NoteScanner(threads, 0, false).scan(files, regex, blackhole::consume);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> lookup() throws Exception {
+        return searchIndex.search(List.of("think"));
+    }
+}
@@ -1,5 +1,8 @@
 package de.bender.notes.boundary;
 
+import de.bender.notes.control.Config;
+import de.bender.notes.control.EntryReader;
+import de.bender.notes.control.NoteAppender;
 import de.bender.notes.control.NoteService;
 import io.quarkus.qute.Template;
 import picocli.CommandLine.Command;
@@ -7,14 +10,17 @@ import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import javax.inject.Inject;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 
 @Command(name = "add",
@@ -23,10 +29,18 @@ import java.util.concurrent.Callable;
 public class AdditionCmd implements Callable<Integer> {
 
     private static final String TS_PATTERN_FORMAT = "HH:mm:ss";
+    private static final String DAY_PATTERN_FORMAT = "yyyy-MM-dd";
+    private static final long MAX_PENDING_CHARS = 1024 * 1024;
 
     @Inject
     NoteService notes;
 
+    @Inject
+    NoteAppender appender;
+
+    @Inject
+    Config config;
+
     @Inject
     Template note;
 
@@ -38,21 +52,101 @@ public class AdditionCmd implements Callable<Integer> {
             description = "Optional filename the given note should be added")
     String fileName;
 
+    @Option(names = {"--fsync"},
+            paramLabel = "<policy>",
+            description = "Whether the entry is flushed to disk before returning: none, data or full (default: NOTES_FSYNC of the config)")
+    String fsync;
+
+    @Option(names = {"--stdin"},
+            arity = "0..1",
+            fallbackValue = "lines",
+            paramLabel = "<format>",
+            description = "Reads many entries from stdin instead - one per line (lines, the default), NUL-terminated " +
+                    "(nul) or as JSON-lines with text, timestamp and file (json). Entries are written in batches - one " +
+                    "append per note.")
+    String stdin;
+
     @Override
     public Integer call() throws Exception {
+        NoteAppender.Fsync policy;
+        EntryReader.Format format;
+        try {
+            policy = fsync != null ? NoteAppender.Fsync.of(fsync) : config.getFsyncPolicy();
+            format = stdin != null ? EntryReader.Format.of(stdin) : null;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        if (format != null) {
+            return ingest(new EntryReader(System.in, format), policy);
+        }
         Path noteFile = notes.ensureNotesFileExists(fileName);
-        var tsFormatter = DateTimeFormatter.ofPattern(TS_PATTERN_FORMAT).withZone(ZoneId.systemDefault());
 
         if (! this.content.isEmpty()) {
-            String newEntry = note
-                    .data("headline", content.get(0))
-                    .data( "body", content.size() > 1 ? String.join("\n", content) : "")
-                    .data( "timestamp", tsFormatter.format(Instant.now()))
-                    .render();
-
-            Files.writeString(noteFile, newEntry, StandardOpenOption.APPEND);
+            appender.append(noteFile, render(content, Instant.now()), policy);
         }
 
         return 0;
     }
+
+    /*
+     * Entries are collected per note and written whenever stdin has nothing more to offer right now (or enough
+     * piled up) - so a steady stream of entries gets batched while a slow one is still written without delay
+     */
+    private int ingest(EntryReader reader, NoteAppender.Fsync policy) throws IOException {
+        var dayFormatter = DateTimeFormatter.ofPattern(DAY_PATTERN_FORMAT).withZone(ZoneId.systemDefault());
+        Map<String, Path> noteFiles = new HashMap<>();
+        Map<Path, List<String>> pending = new LinkedHashMap<>();
+        long pendingChars = 0;
+        int skipped = 0;
+
+        while (true) {
+            EntryReader.Entry entry;
+            try {
+                entry = reader.next();
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                skipped++;
+                continue;
+            }
+            if (entry == null) {
+                break;
+            }
+            Instant timestamp = Optional.ofNullable(entry.timestamp()).orElseGet(Instant::now);
+            String target = Optional.ofNullable(entry.fileName())
+                    .or(() -> Optional.ofNullable(fileName))
+                    .orElseGet(() -> dayFormatter.format(timestamp));
+            Path noteFile = noteFiles.get(target);
+            if (noteFile == null) {
+                noteFile = notes.ensureNotesFileExists(target);
+                noteFiles.put(target, noteFile);
+            }
+            String newEntry = render(entry.content(), timestamp);
+            pending.computeIfAbsent(noteFile, key -> new ArrayList<>()).add(newEntry);
+            pendingChars += newEntry.length();
+
+            if (pendingChars >= MAX_PENDING_CHARS || reader.isDrained()) {
+                flush(pending, policy);
+                pendingChars = 0;
+            }
+        }
+        flush(pending, policy);
+        return skipped > 0 ? 1 : 0;
+    }
+
+    private void flush(Map<Path, List<String>> pending, NoteAppender.Fsync policy) throws IOException {
+        for (Map.Entry<Path, List<String>> entries : pending.entrySet()) {
+            appender.append(entries.getKey(), entries.getValue(), policy);
+        }
+        pending.clear();
+    }
+
+    private String render(List<String> content, Instant timestamp) {
+        var tsFormatter = DateTimeFormatter.ofPattern(TS_PATTERN_FORMAT).withZone(ZoneId.systemDefault());
+        return note
+                .data("headline", content.get(0))
+                .data( "body", content.size() > 1 ? String.join("\n", content) : "")
+                .data( "timestamp", tsFormatter.format(timestamp))
+                .render();
+    }
 }
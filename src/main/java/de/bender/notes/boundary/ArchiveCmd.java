@@ -0,0 +1,90 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.NoteArchive;
+import de.bender.notes.control.NoteFiles;
+import de.bender.notes.control.NoteService;
+import de.bender.notes.control.Period;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.TypeConversionException;
+
+import javax.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import static java.lang.System.err;
+import static java.lang.System.out;
+
+@Command(name = "archive",
+        description = "Packs old notes into compressed monthly segments (within `<notes-dir>/archive`) - archived notes " +
+                "are still listed, searched, viewed, served and rendered as usual. Editing one restores it.")
+public class ArchiveCmd implements Callable<Integer> {
+
+    @Inject
+    Config config;
+
+    @Inject
+    NoteService notes;
+
+    @Option(names = {"--older-than"},
+            description = "Archives the notes older than the given age - i.e. 6m or 1y (default: NOTES_ARCHIVE_AGE of the config)",
+            converter = PeriodOptions.LastConverter.class)
+    java.time.Period olderThan;
+
+    @Option(names = {"-n", "--dry-run"}, description = "Only shows what would be archived")
+    boolean dryRun;
+
+    @Override
+    public Integer call() throws Exception {
+        java.time.Period age = olderThan;
+        if (age == null) {
+            try {
+                age = new PeriodOptions.LastConverter().convert(config.getArchiveAge());
+            } catch (TypeConversionException e) {
+                err.println("Invalid NOTES_ARCHIVE_AGE: " + e.getMessage());
+                return 1;
+            }
+        }
+        notes.ensureDocumentsDirExists();
+        Path documentPath = config.getDocumentPath();
+        LocalDate before = LocalDate.now().minus(age);
+
+        List<Path> candidates;
+        try (Stream<Path> paths = NoteFiles.stream(documentPath, new Period(null, before.minusDays(1)))) {
+            candidates = paths
+                    .filter(p -> !NoteArchive.isArchived(p))
+                    .filter(Files::isRegularFile)
+                    .toList();
+        }
+        long bytes = 0;
+        for (Path note : candidates) {
+            bytes += Files.size(note);
+        }
+
+        if (dryRun) {
+            candidates.forEach(note -> out.println(NoteFiles.nameOf(documentPath, note)));
+            out.printf("Would archive %d notes (%d KiB) dated before %s%n", candidates.size(), bytes / 1024, before);
+            return 0;
+        }
+
+        int archived = NoteArchive.archive(documentPath, candidates);
+        Set<Path> shards = new TreeSet<>();
+        candidates.stream()
+                .map(Path::getParent)
+                .filter(parent -> NoteFiles.isShard(documentPath, parent))
+                .forEach(shards::add);
+        for (Path shard : shards) {
+            NoteFiles.deleteIfEmpty(documentPath, shard);
+        }
+        out.printf("Archived %d notes (%d KiB) dated before %s into '%s'%n", archived, bytes / 1024, before,
+                documentPath.resolve(NoteArchive.ARCHIVE_DIR_NAME));
+        return 0;
+    }
+}
@@ -0,0 +1,184 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.DaemonProtocol;
+import de.bender.notes.control.HeadlineCache;
+import de.bender.notes.control.NoteChanges;
+import de.bender.notes.control.SearchIndex;
+import io.quarkus.picocli.runtime.PicocliCommandLineFactory;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import javax.inject.Inject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+@Command(name = "daemon",
+        description = "Keeps running in the background and executes `search`, `list`, `add` and `todo` on behalf of " +
+                "the CLI - with configuration, caches and indexes kept warm (the CLI falls back to executing commands " +
+                "on its own if no daemon is running)")
+public class DaemonCmd implements Callable<Integer> {
+
+    private static final Set<String> READ_ONLY_COMMANDS = Set.of("search", "list");
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    @Inject
+    Config config;
+
+    @Inject
+    SearchIndex searchIndex;
+
+    @Inject
+    HeadlineCache headlineCache;
+
+    @Inject
+    NoteChanges noteChanges;
+
+    @Inject
+    Terminal terminal;
+
+    @Inject
+    PicocliCommandLineFactory commandLineFactory;
+
+    @Override
+    public Integer call() throws Exception {
+        Path socket = config.getDaemonSocketPath();
+        DaemonProtocol.Request probe = DaemonProtocol.Request.of(config, false, List.of("--version"));
+        if (DaemonProtocol.forward(socket, probe, OutputStream.nullOutputStream(), OutputStream.nullOutputStream()).isPresent()) {
+            System.err.println("There's already a daemon listening on " + socket);
+            return 1;
+        }
+        Files.deleteIfExists(socket);               // left behind by a daemon that didn't terminate gracefully
+
+        ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "request-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            bind(server, socket);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException ignored) {
+                }
+            }));
+
+            noteChanges.watch();                    // caches are only validated again once notes changed
+            searchIndex.update();                   // warm up everything a request might need
+            headlineCache.headlines();
+            System.err.println("Listening on " + socket);
+
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client, timeouts);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Couldn't handle request: " + e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Binds the socket within a private directory and moves it into place once only the owner has access to it - so
+     * there's no moment at which others could connect
+     */
+    private static void bind(ServerSocketChannel server, Path socket) throws IOException {
+        Path parent = socket.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path directory = Files.createTempDirectory(parent, ".notes-daemon",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        try {
+            Path bound = directory.resolve(socket.getFileName());
+            server.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            Files.move(bound, socket, ATOMIC_MOVE);
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    /*
+     * Requests are handled one after another - commands print to System.out/err, so these have to be redirected
+     * to the client for the duration of a request. A client that doesn't send its request in time is disconnected,
+     * so it cannot block the daemon.
+     */
+    private void handle(SocketChannel client, ScheduledExecutorService timeouts) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        DaemonProtocol.Request request;
+        ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            try {
+                client.close();                     // aborts the pending read
+            } catch (IOException ignored) {
+            }
+        }, REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            request = DaemonProtocol.Request.readFrom(in);
+        } catch (ClosedChannelException e) {
+            throw new IOException("no request within " + REQUEST_TIMEOUT.toSeconds() + "s");
+        } finally {
+            timeout.cancel(false);
+        }
+        if (!client.isOpen()) {
+            return;                                 // timed out right after the request was read
+        }
+
+        if (!request.isConfiguredLike(DaemonProtocol.Request.of(config, false, List.of()))) {
+            DaemonProtocol.writeRejected(out);      // client is configured differently - it has to do the work itself
+            return;
+        }
+
+        PrintStream stdout = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT)), true, StandardCharsets.UTF_8);
+        PrintStream stderr = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR)), true, StandardCharsets.UTF_8);
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        int exitCode;
+        try {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            terminal.attach(request.interactive());
+            CommandLine commandLine = commandLineFactory.create()     // fresh instance, so no option-state survives a request
+                    .setOut(new PrintWriter(stdout, true))
+                    .setErr(new PrintWriter(stderr, true));
+            exitCode = commandLine.execute(request.args().toArray(String[]::new));
+            CommandLine.ParseResult parsed = commandLine.getParseResult();
+            if (parsed == null || !parsed.hasSubcommand() || !READ_ONLY_COMMANDS.contains(parsed.subcommand().commandSpec().name())) {
+                noteChanges.invalidate();           // its own writes might not have been reported by the watch-service yet
+            }
+        } finally {
+            terminal.detach();
+            stdout.flush();
+            stderr.flush();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+        DaemonProtocol.writeExit(out, exitCode);
+    }
+}
@@ -0,0 +1,61 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.DaemonProtocol;
+import io.quarkus.picocli.runtime.PicocliCommandLineFactory;
+import picocli.CommandLine;
+import picocli.CommandLine.ParseResult;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * Hands commands over to a running `notes daemon` (see {@link DaemonCmd}) instead of executing them in this
+ * process - if there's no daemon (or it's configured differently) commands are executed as usual.
+ * <p/>
+ * Only commands that neither need the terminal nor stdin are forwarded.
+ */
+@ApplicationScoped
+public class DaemonForwarding {
+
+    private static final Set<String> FORWARDABLE_COMMANDS = Set.of("search", "list", "add", "todo");
+
+    @Inject
+    Config config;
+
+    @Produces
+    CommandLine commandLine(PicocliCommandLineFactory factory) {
+        return factory.create().setExecutionStrategy(this::execute);
+    }
+
+    private int execute(ParseResult parseResult) {
+        if (isForwardable(parseResult)) {
+            OptionalInt exitCode = DaemonProtocol.forward(config.getDaemonSocketPath(),
+                    DaemonProtocol.Request.of(config, System.console() != null, parseResult.originalArgs()),
+                    System.out, System.err);
+            if (exitCode.isPresent()) {
+                return exitCode.getAsInt();
+            }
+        }
+        return new CommandLine.RunLast().execute(parseResult);
+    }
+
+    private boolean isForwardable(ParseResult parseResult) {
+        if (!parseResult.hasSubcommand() || !FORWARDABLE_COMMANDS.contains(parseResult.subcommand().commandSpec().name())) {
+            return false;
+        }
+        if (parseResult.subcommand().hasMatchedOption("--stdin")) {
+            return false;                           // stdin isn't forwarded - i.e. `notes add --stdin`
+        }
+        try {
+            config.getDocumentPath();               // an incomplete configuration is reported by the command itself
+            config.getTodoFilePath();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.CorpusGenerator;
+import de.bender.notes.control.NoteFiles;
+import io.quarkus.qute.Template;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+import javax.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+@Command(name = "gen-corpus",
+        description = "Generates a synthetic (but realistically shaped) notes-dir for load- and scale-tests - the same " +
+                "options (including the seed) always result in the very same corpus")
+public class GenCorpusCmd implements Callable<Integer> {
+
+    @Spec
+    CommandSpec spec;
+
+    @Inject
+    Config config;
+
+    @Inject
+    Template note;
+
+    @Parameters(description = "Directory the corpus is generated into - must not contain any notes yet")
+    Path directory;
+
+    @Option(names = {"-s", "--seed"}, description = "Seed of the generator (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    long seed;
+
+    @Option(names = {"--start"}, description = "Date of the first note (default: ${DEFAULT-VALUE})", defaultValue = "2015-01-01")
+    LocalDate start;
+
+    @Option(names = {"-y", "--years"}, description = "Number of years the notes are spread across (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    int years;
+
+    @Option(names = {"-n", "--notes"}, description = "Exact number of notes to be generated (overrides --years)")
+    int notes;
+
+    @Option(names = {"--entries-per-day"}, description = "Max number of entries per note (default: ${DEFAULT-VALUE})", defaultValue = "4")
+    int entriesPerDay;
+
+    @Option(names = {"--body-words"}, description = "Average number of words per entry (default: ${DEFAULT-VALUE})", defaultValue = "120")
+    int bodyWords;
+
+    @Option(names = {"--image-ratio"}, description = "Probability of an entry to contain an image (default: ${DEFAULT-VALUE})", defaultValue = "0.05")
+    double imageRatio;
+
+    @Option(names = {"--gap-ratio"}, description = "Probability of a day without a note - at least 0 and less than 1 (default: ${DEFAULT-VALUE})", defaultValue = "0.3")
+    double gapRatio;
+
+    @Option(names = {"--todos"}, description = "Number of entries in the todo-file (default: ${DEFAULT-VALUE})", defaultValue = "500")
+    int todos;
+
+    @Option(names = {"--sharded"}, description = "Places the notes in `yyyy/MM/`-dirs (see `notes migrate`)")
+    boolean sharded;
+
+    @Override
+    public Integer call() throws Exception {
+        if (gapRatio < 0 || gapRatio >= 1) {        // every day would be a gap - so not a single note would be generated
+            throw new ParameterException(spec.commandLine(), "--gap-ratio has to be at least 0 and less than 1 (was " + gapRatio + ")");
+        }
+        if (containsNotes(directory)) {
+            System.err.printf("'%s' already contains notes - please choose an empty directory%n", directory);
+            return 1;
+        }
+
+        int days = notes > 0 ? 0 : (int) (start.plusYears(years).toEpochDay() - start.toEpochDay());
+        var shape = new CorpusGenerator.Shape(seed, start, days, notes, entriesPerDay, bodyWords, imageRatio, gapRatio, todos);
+        String todoFileName = config.getTodoFilePath().getFileName().toString();
+
+        long startedAt = System.nanoTime();
+        CorpusGenerator.Summary summary = new CorpusGenerator(note, shape).generate(Files.createDirectories(directory), todoFileName,
+                sharded ? NoteFiles.Layout.SHARDED : NoteFiles.Layout.FLAT);
+        System.err.printf("Generated %d notes (%d entries, %d images, %d KiB) in %d ms into '%s'%n",
+                summary.notes(), summary.entries(), summary.images(), summary.bytes() / 1024,
+                (System.nanoTime() - startedAt) / 1_000_000, directory);
+        return 0;
+    }
+
+    private static boolean containsNotes(Path directory) throws Exception {
+        if (Files.notExists(directory)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.anyMatch(p -> p.toString().endsWith("md") || NoteFiles.isShard(directory, p));
+        }
+    }
+}
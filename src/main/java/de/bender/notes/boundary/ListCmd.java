@@ -1,13 +1,16 @@
 package de.bender.notes.boundary;
 
 import de.bender.notes.control.Config;
+import de.bender.notes.control.HeadlineCache;
+import de.bender.notes.control.Headline;
+import de.bender.notes.control.NoteFiles;
 import de.bender.notes.control.NoteService;
+import de.bender.notes.control.Period;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 
 import javax.inject.Inject;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -28,41 +31,46 @@ public class ListCmd implements Callable<Integer> {
     Config config;
     @Inject
     NoteService notes;
+    @Inject
+    HeadlineCache headlineCache;
 
     @Option(names = {"--compact", "-c"}, description = "Shows the list-view in a compacted format (less information)")
     boolean compact;
 
+    @Mixin
+    PeriodOptions periodOptions = new PeriodOptions();
+
     @Override
     public Integer call() throws Exception {
         notes.ensureDocumentsDirExists();
 
-        Stream<Path> fileStream = Files.list(config.getDocumentPath())
-                .filter(Files::isRegularFile)
-                .filter(p -> p.toString().endsWith("md"))
-                .sorted();
-
+        Period period = periodOptions.period();
         if (compact) {
-            fileStream.map(Path::getFileName).forEach(out::println);
+            try (Stream<Path> paths = NoteFiles.stream(config.getDocumentPath(), period)) {
+                paths.filter(NoteFiles::isFile)
+                        .map(Path::getFileName)
+                        .forEach(out::println);
+            }
         } else {
-            fileStream.forEach(this::printTreeView);
+            headlineCache.headlines(period).forEach(this::printTreeView);
         }
 
         return 0;
     }
 
-    private void printTreeView(Path path) {
-        out.println(path.getFileName());
+    private void printTreeView(HeadlineCache.NoteHeadlines note) {
+        StringBuilder treeView = new StringBuilder().append(note.file().getFileName()).append(System.lineSeparator());
 
-        try {
-            List<String> allHeadlines = Files.readAllLines(path).stream()
-                    .filter(l -> l.startsWith("# "))        // look for H1 headlines
-                    .map(l -> l.substring(2))     // only use the text (remove the markdown #)
-                    .toList();
-            for (int i = 0; i < allHeadlines.size(); i++) {
-                out.println(((i == allHeadlines.size()-1) ? TREE_END_ELEMENT : TREE_MID_ELEMENT) + allHeadlines.get(i));
-            }
-            out.println();
-        } catch (IOException ignored) {
+        List<String> allHeadlines = note.headlines().stream()
+                .map(HeadlineCache.Entry::headline)
+                .filter(Headline::isTopLevel)                   // look for H1 headlines
+                .map(Headline::text)
+                .toList();
+        for (int i = 0; i < allHeadlines.size(); i++) {
+            treeView.append((i == allHeadlines.size()-1) ? TREE_END_ELEMENT : TREE_MID_ELEMENT)
+                    .append(allHeadlines.get(i))
+                    .append(System.lineSeparator());
         }
+        out.println(treeView);      // one write per note (instead of one per line)
     }
 }
@@ -0,0 +1,98 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.NoteArchive;
+import de.bender.notes.control.NoteFiles;
+import de.bender.notes.control.NoteService;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import javax.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import static java.lang.System.err;
+import static java.lang.System.out;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.attribute.PosixFilePermission.*;
+import static java.nio.file.attribute.PosixFilePermissions.asFileAttribute;
+
+@Command(name = "migrate",
+        description = "Moves your dated notes into the given layout - either `flat` (all notes in one dir) or `sharded` " +
+                "(notes in `yyyy/MM/`-dirs, which keeps listings fast for many years of notes)")
+public class MigrateCmd implements Callable<Integer> {
+
+    @Inject
+    Config config;
+
+    @Inject
+    NoteService notes;
+
+    @Parameters(paramLabel = "<layout>", description = "Target layout: flat or sharded")
+    String layout;
+
+    @Option(names = {"-n", "--dry-run"}, description = "Only shows what would be moved")
+    boolean dryRun;
+
+    @Override
+    public Integer call() throws Exception {
+        NoteFiles.Layout target;
+        try {
+            target = NoteFiles.Layout.valueOf(layout.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            err.printf("Unknown layout '%s' - use 'flat' or 'sharded'%n", layout);
+            return 1;
+        }
+        notes.ensureDocumentsDirExists();
+        Path documentPath = config.getDocumentPath();
+
+        List<Path> allNotes;
+        try (Stream<Path> paths = NoteFiles.stream(documentPath)) {
+            allNotes = paths                // we're about to move them - so list them first
+                    .filter(p -> !NoteArchive.isArchived(p))
+                    .filter(Files::isRegularFile)
+                    .toList();
+        }
+
+        int moved = 0;
+        int conflicts = 0;
+        Set<Path> emptiedShards = new TreeSet<>();
+        for (Path note : allNotes) {
+            Path destination = target.resolve(documentPath, note.getFileName().toString());
+            if (destination.equals(note)) {
+                continue;
+            }
+            if (Files.exists(destination)) {
+                err.printf("Skipped '%s' - '%s' already exists%n", NoteFiles.nameOf(documentPath, note), NoteFiles.nameOf(documentPath, destination));
+                conflicts++;
+                continue;
+            }
+            if (dryRun) {
+                out.printf("%s -> %s%n", NoteFiles.nameOf(documentPath, note), NoteFiles.nameOf(documentPath, destination));
+            } else {
+                Files.createDirectories(destination.getParent(), asFileAttribute(Set.of(OWNER_EXECUTE, OWNER_READ, OWNER_WRITE)));
+                Files.move(note, destination, ATOMIC_MOVE);     // a rename - so the modification-time (and the DocSet) stays valid
+                if (NoteFiles.isShard(documentPath, note.getParent())) {
+                    emptiedShards.add(note.getParent());
+                }
+            }
+            moved++;
+        }
+        for (Path shard : emptiedShards) {
+            NoteFiles.deleteIfEmpty(documentPath, shard);
+        }
+
+        out.printf("%s %d notes into the %s layout%s%n", dryRun ? "Would move" : "Moved", moved, layout.toLowerCase(),
+                conflicts > 0 ? " (" + conflicts + " skipped)" : "");
+        if (config.getNotesLayout() != target) {
+            out.printf("Set NOTES_LAYOUT=%s (see `notes config edit`) so new notes are placed accordingly%n", target.name().toLowerCase());
+        }
+        return conflicts > 0 ? 1 : 0;
+    }
+}
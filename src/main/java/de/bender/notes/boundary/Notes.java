@@ -25,7 +25,12 @@ import java.util.concurrent.Callable;
                 ListCmd.class,
                 DeleteCmd.class,
                 RenderCmd.class,
-                SearchCmd.class},
+                SearchCmd.class,
+                ServeCmd.class,
+                GenCorpusCmd.class,
+                MigrateCmd.class,
+                ArchiveCmd.class,
+                DaemonCmd.class},
         description = "Simple notes-taking app")
 public class Notes implements Callable<Integer> {
 
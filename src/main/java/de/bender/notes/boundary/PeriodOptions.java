@@ -0,0 +1,72 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.NoteFiles;
+import de.bender.notes.control.Period;
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+import picocli.CommandLine.TypeConversionException;
+
+import java.time.LocalDate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Options of commands that can be restricted to the notes of a certain period - notes are selected by the date in
+ * their file-name (see {@link NoteFiles}), so notes outside the period aren't even opened. Without any of these
+ * options all notes are considered.
+ */
+public class PeriodOptions {
+
+    @Spec(Spec.Target.MIXEE)
+    CommandSpec spec;
+
+    @Option(names = {"--since"},
+            description = "Only considers notes of the given day (yyyy-MM-dd) or later")
+    LocalDate since;
+
+    @Option(names = {"--until"},
+            description = "Only considers notes of the given day (yyyy-MM-dd) or earlier")
+    LocalDate until;
+
+    @Option(names = {"--last"},
+            description = "Only considers notes of the last days, weeks, months or years - including today (i.e. 30d, 2w, 3m or 1y)",
+            converter = LastConverter.class)
+    java.time.Period last;
+
+    /**
+     * @return the period selected by the options - {@link Period#ALL} if none was given
+     */
+    Period period() {
+        if (last != null && since != null) {
+            throw new ParameterException(spec.commandLine(), "--last and --since cannot be combined");
+        }
+        LocalDate from = last != null ? LocalDate.now().minus(last).plusDays(1) : since;
+        if (from != null && until != null && until.isBefore(from)) {
+            throw new ParameterException(spec.commandLine(), "The period ends (" + until + ") before it starts (" + from + ")");
+        }
+        return from == null && until == null ? Period.ALL : new Period(from, until);
+    }
+
+    static class LastConverter implements ITypeConverter<java.time.Period> {
+
+        private static final Pattern AMOUNT = Pattern.compile("(\\d{1,5})([dwmy])");
+
+        @Override
+        public java.time.Period convert(String value) {
+            Matcher matcher = AMOUNT.matcher(value.trim().toLowerCase());
+            if (!matcher.matches() || Integer.parseInt(matcher.group(1)) < 1) {
+                throw new TypeConversionException("'" + value + "' isn't a period like 30d, 2w, 3m or 1y");
+            }
+            int amount = Integer.parseInt(matcher.group(1));
+            return switch (matcher.group(2)) {
+                case "d" -> java.time.Period.ofDays(amount);
+                case "w" -> java.time.Period.ofWeeks(amount);
+                case "m" -> java.time.Period.ofMonths(amount);
+                default -> java.time.Period.ofYears(amount);
+            };
+        }
+    }
+}
@@ -1,39 +1,57 @@
 package de.bender.notes.boundary;
 
+import de.bender.notes.control.AssetPublisher;
 import de.bender.notes.control.Config;
+import de.bender.notes.control.Corpus;
+import de.bender.notes.control.DocSetIndexWriter;
+import de.bender.notes.control.MarkdownService;
+import de.bender.notes.control.Metrics;
+import de.bender.notes.control.NoteFiles;
 import de.bender.notes.control.NoteService;
+import de.bender.notes.control.RenderEvents;
+import de.bender.notes.control.RenderManifest;
+import de.bender.notes.control.SearchIndex;
 import io.quarkus.qute.Template;
+import io.quarkus.qute.TemplateInstance;
 import io.quarkus.runtime.annotations.RegisterForReflection;
-import io.smallrye.mutiny.tuples.Tuple2;
-import org.commonmark.Extension;
-import org.commonmark.ext.autolink.AutolinkExtension;
-import org.commonmark.ext.gfm.strikethrough.StrikethroughExtension;
-import org.commonmark.ext.gfm.tables.TablesExtension;
-import org.commonmark.ext.heading.anchor.HeadingAnchorExtension;
-import org.commonmark.ext.image.attributes.ImageAttributesExtension;
-import org.commonmark.ext.task.list.items.TaskListItemsExtension;
-import org.commonmark.node.*;
-import org.commonmark.parser.Parser;
-import org.commonmark.renderer.NodeRenderer;
-import org.commonmark.renderer.html.CoreHtmlNodeRenderer;
-import org.commonmark.renderer.html.HtmlNodeRendererContext;
-import org.commonmark.renderer.html.HtmlRenderer;
-import org.commonmark.renderer.html.HtmlWriter;
-import org.commonmark.renderer.text.*;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
 
 import javax.inject.Inject;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.*;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.nio.file.StandardOpenOption.APPEND;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 @Command(name = "render",
         aliases = {"r"},
@@ -44,15 +62,12 @@ public class RenderCmd implements Callable<Integer> {
     private static final String CONTENTS = "Contents";
     private static final String RESOURCES = "Resources";
     private static final String DOCUMENTS = "Documents";
-
-    private static final List<Extension> markdownExtensions = List.of(
-            AutolinkExtension.create(),
-            StrikethroughExtension.create(),
-            HeadingAnchorExtension.create(),
-            ImageAttributesExtension.create(),
-            TaskListItemsExtension.create(),
-            TablesExtension.create()
-    );
+    private static final String MANIFEST_NAME = "Notes.docset.manifest";
+    private static final String ASSETS_NAME = "Notes.docset.assets";
+    private static final int RENDERS_AHEAD_PER_THREAD = 4;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    /* stands in for a note's HTML within its page - the HTML is streamed in its place (never appears in any note) */
+    private static final String MARKDOWN_SLOT = "\u0000markdown_output\u0000";
 
     @Inject
     Config config;
@@ -60,6 +75,12 @@ public class RenderCmd implements Callable<Integer> {
     @Inject
     NoteService notes;
 
+    @Inject
+    MarkdownService markdown;
+
+    @Inject
+    SearchIndex searchIndex;
+
     @Inject
     Template render;
 
@@ -76,252 +97,514 @@ public class RenderCmd implements Callable<Integer> {
     Template index;
 
 
+    @Option(names = {"-i", "--incremental"},
+            description = "Only re-renders notes that were added or changed since the last render (instead of re-creating the whole DocSet)")
+    boolean incremental;
+
+    @Option(names = {"-t", "--threads"},
+            description = "Number of workers used to render the markdown files in parallel (defaults to the number of available cores)")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+
+    @Option(names = {"-w", "--watch"},
+            description = "Keeps running and incrementally re-renders the DocSet whenever notes or images change")
+    boolean watch;
+
+    @Option(names = {"--debounce"},
+            description = "Time (in ms) without further changes before a re-render is triggered in watch-mode (default: ${DEFAULT-VALUE})",
+            defaultValue = "150")
+    long debounceMillis;
+
+    @Option(names = {"--assets"},
+            paramLabel = "<mode>",
+            description = "How images are published into the DocSet: copy, link (hardlinks), reflink (copy-on-write clones) or symlink - unsupported ones fall back to copies (default: NOTES_ASSET_MODE of the config)")
+    String assets;
+
+    @Mixin
+    PeriodOptions periodOptions = new PeriodOptions();
+
+    @Mixin
+    StatsOptions statsOptions = new StatsOptions();
+
+    private Metrics metrics = Metrics.disabled();
+    private AssetPublisher.Mode assetMode;
+
+
     @Override
     public Integer call() throws Exception {
         notes.ensureDocumentsDirExists();           // just make sure that the documents-dir exists (we read from it)
-        notes.reinitOutput(documentsPath());        // make sure the output-dir-structure exists and is empty
-
-        copyStaticContent();
-        renderInfoPlist();
-        renderMarkdownFiles();                      // process markdown and render HTML output
-        renderSqliteDb();                           // use sqlite3 CLI client to create and fill the searchIndex
-        renderMainPage();                           // dash also has the possibility to render an overview page (called MainPage)
-        renderTocFrame();                           // for those that don't use a docset-reader create a frame-set index
+        try {
+            assetMode = assets != null ? AssetPublisher.Mode.of(assets) : config.getAssetMode();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
 
+        int exitCode = render(incremental);
+        if (!watch) {
+            return exitCode;
+        }
+        watchForChanges();
         return 0;
     }
 
-    private void copyStaticContent() throws IOException {
-        Files.walk(config.getStaticContentPath())
-                .forEach(sourcePath -> {
-                    Path destination = pathOf(documentsPath(), sourcePath.getFileName().toString());
-                    try {
-                        Files.copy(sourcePath, destination);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+    /*
+     * Waits for changes within the documents- and img-dir - a burst of changes (like the several writes of an
+     * editor's save) is coalesced into a single incremental render once there weren't any further changes for
+     * `debounceMillis`.
+     */
+    private void watchForChanges() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            register(watchService, config.getDocumentPath());
+            register(watchService, config.getStaticContentPath());
+            for (Path shard : NoteFiles.shards(config.getDocumentPath(), config.getDocumentPath())) {
+                register(watchService, shard);
+            }
+            System.err.printf("Watching '%s' for changes (press Ctrl-C to stop)%n", config.getDocumentPath());
+
+            while (true) {
+                boolean relevant = isRelevant(watchService, watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= isRelevant(watchService, key);
+                }
+                if (!relevant) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    int exitCode = render(true);
+                    searchIndex.update();
+                    System.err.printf("%s re-rendered in %d ms%n", exitCode == 0 ? "DocSet" : "DocSet (partially)",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } catch (IOException | RuntimeException e) {
+                    // most likely a note vanished while rendering (or a worker failed) - the next change will catch up
+                    System.err.println("Couldn't re-render the DocSet: " + rootCauseOf(e));
+                }
+            }
+        }
+    }
+
+    private void register(WatchService watchService, Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        }
+    }
+
+    /*
+     * Consumes the events of the given key - only changes to notes or images count (temp-files of editors or our
+     * own index-files don't). A newly created img-dir or shard (see {@link NoteFiles}) gets watched, too.
+     */
+    private boolean isRelevant(WatchService watchService, WatchKey key) throws IOException {
+        Path directory = (Path) key.watchable();
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                relevant = true;            // we missed something - the incremental render will sort it out
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            if (changed.equals(config.getStaticContentPath())) {
+                register(watchService, changed);
+                relevant = true;
+            } else if (event.kind() == ENTRY_CREATE && NoteFiles.isShard(config.getDocumentPath(), changed) && Files.isDirectory(changed)) {
+                register(watchService, changed);
+                for (Path shard : NoteFiles.shards(config.getDocumentPath(), changed)) {    // i.e. created by `mkdir -p`
+                    register(watchService, shard);
+                }
+                relevant = true;
+            } else {
+                relevant |= directory.equals(config.getStaticContentPath()) || changed.toString().endsWith("md");
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private int render(boolean incrementally) throws IOException, InterruptedException {
+        metrics = statsOptions.metrics();           // a fresh collector per render (so watch-mode reports every pass)
+        int exitCode;
+        try (Metrics.Phase ignored = metrics.phase("total")) {
+            exitCode = renderDocSet(incrementally);
+        }
+        statsOptions.report(metrics);
+        return exitCode;
+    }
+
+    /*
+     * The render is a graph of stages rather than a sequence of phases - each stage starts as soon as its input is
+     * available, so the whole render takes about as long as its slowest stage:
+     *
+     *   static content + Info.plist ---------------------------------------------------+
+     *   list -> scan (read/parse) -+-> render HTML (per changed note) -----------------+-> manifest
+     *                              +-> search-index (streamed to sqlite3 per note) ----+
+     *                              +-> TOC + main page (once all metadata is known) ---+
+     *
+     * Stages are connected by bounded hand-overs (the notes read ahead, the notes waiting to be rendered, the pipe
+     * to sqlite3) - so a slow stage slows down its producers instead of letting parsed notes pile up.
+     */
+    private int renderDocSet(boolean incrementally) throws IOException, InterruptedException {
+        RenderManifest manifest;
+        if (incrementally && Files.exists(documentsPath())) {
+            manifest = RenderManifest.load(manifestPath());
+        } else {
+            // make sure the output-dir-structure exists and is empty - except for images that are still up-to-date
+            notes.reinitOutput(documentsPath(), assetPublisher().published(documentsPath()));
+            manifest = RenderManifest.empty();
+        }
+
+        ForkJoinPool workers = new ForkJoinPool(Math.max(1, threads));
+        ExecutorService stages = Executors.newFixedThreadPool(2);   // the stages that don't depend on single notes
+        try (DocSetIndexWriter docSetIndex = new DocSetIndexWriter()) {
+            Future<?> staticContent = stages.submit(() -> {
+                try (Metrics.Phase ignored = metrics.phase("publishStaticContent")) {
+                    publishStaticContent(workers);
+                }
+                renderInfoPlist();
+                return null;
+            });
+
+            // read and parse every added/changed note exactly once - and hand it over to rendering right away
+            Semaphore renderSlots = new Semaphore(RENDERS_AHEAD_PER_THREAD * Math.max(1, threads));
+            Renderings renderings = new Renderings();
+            Corpus corpus;
+            Metrics.Phase renderPhase = metrics.phase("renderMarkdownFiles");
+            try (Metrics.Phase ignored = metrics.phase("scan")) {
+                corpus = Corpus.scan(config.getDocumentPath(), periodOptions.period(), manifest, markdown, workers, metrics, note -> {
+                    if (note.status() != Corpus.Status.UNCHANGED) {
+                        docSetIndex.open(indexPath());      // the index has to be re-created - so stream from now on
+                        renderSlots.acquire();
+                        renderings.submit(workers, note, renderSlots::release);
                     }
+                    docSetIndex.addEntry(removeAnyExtension(note.output()), note.output());
+                    note.headlines().forEach(h -> docSetIndex.addSection(h.text(), note.output()));
                 });
+            }
+            removeOutputsOf(corpus.removed());      // notes that vanished since the last render shouldn't leave HTML behind
+
+            Future<?> pages = stages.submit(() -> {
+                if (corpus.structureChanged()) {    // the frame-set only knows about files - changed content doesn't matter
+                    try (Metrics.Phase ignored = metrics.phase("renderTocFrame")) {
+                        renderTocFrame(corpus);     // for those that don't use a docset-reader create a frame-set index
+                    }
+                }
+                if (corpus.contentChanged()) {      // headlines might have changed, too
+                    try (Metrics.Phase ignored = metrics.phase("renderMainPage")) {
+                        renderMainPage(corpus);     // dash also has the possibility to render an overview page (called MainPage)
+                    }
+                }
+                return null;
+            });
+
+            boolean indexWritten = true;
+            if (corpus.contentChanged()) {
+                try (Metrics.Phase ignored = metrics.phase("renderSqliteDb")) {
+                    indexWritten = renderSqliteDb(docSetIndex);     // sqlite3 already got (almost) all entries by now
+                }
+            }
+            List<String> failures = renderings.await();
+            renderPhase.close();
+            await(pages);
+            await(staticContent);
+
+            if (!indexWritten) {                    // don't remember anything so the next (incremental) render retries
+                return 1;
+            }
+            corpus.notes().stream()                 // failed notes stay out of the manifest so they're retried next time
+                    .filter(n -> !failures.contains(n.name()))
+                    .forEach(n -> manifest.put(n.entry()));
+            corpus.removed().forEach(e -> manifest.remove(e.source()));
+            try (Metrics.Phase ignored = metrics.phase("storeManifest")) {
+                manifest.store(manifestPath());
+            }
+            metrics.count("notes.failed", failures.size() + corpus.failures().size());
+
+            return failures.isEmpty() && corpus.failures().isEmpty() ? 0 : 1;
+        } finally {
+            workers.shutdown();
+            stages.shutdown();
+        }
     }
 
-    /**
-     * Since I couldn't get sqlite jdbc driver running in native-image I use the sqlite3 CLI tool as a
-     * poor-mans alternative.
+    /*
+     * Waits for a stage that doesn't depend on single notes - its failure fails the render (as it did when the
+     * stages still ran one after another)
      */
-    private void renderSqliteDb() throws IOException, InterruptedException {
-        try (Stream<Path> list = Files.list(documentsPath())) {
-            List<String> sqlLiteCmd = List.of("sqlite3", pathOf(resourcesPath(), "docSet.dsidx").toString());
-
-            List<String> creations = List.of(
-                    "CREATE TABLE searchIndex(id INTEGER PRIMARY KEY, name TEXT, type TEXT, path TEXT);",
-                    "CREATE UNIQUE INDEX anchor ON searchIndex (name, type, path);");
+    private void await(Future<?> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-            List<String> inserts = list
-                    .map(Path::getFileName)
-                    .filter(p -> p.getFileName().toString().endsWith("html"))
-                    .map(Path::toString)
-                    .map(f -> Tuple2.of(removeAnyExtension(f), f))
-                    .map(t -> String.format("INSERT OR IGNORE INTO searchIndex(name, type, path) VALUES ('%s', 'Entry', '%s');", t.getItem1(), t.getItem2()))
-                    .toList();
+    private void removeOutputsOf(List<RenderManifest.Entry> removed) throws IOException {
+        for (RenderManifest.Entry entry : removed) {
+            Files.deleteIfExists(pathOf(documentsPath(), entry.output()));
+        }
+    }
 
-            List<String> command = new ArrayList<>(sqlLiteCmd);
-            command.addAll(creations);
-            command.addAll(inserts);
+    /*
+     * Unchanged images aren't touched at all - and depending on the asset-mode the others are linked instead of copied
+     */
+    private void publishStaticContent(ForkJoinPool workers) throws IOException, InterruptedException {
+        assetPublisher().publish(config.getStaticContentPath(), documentsPath(), workers);
+    }
 
+    private AssetPublisher assetPublisher() {
+        return new AssetPublisher(config.getDocumentOutputPath().resolve(ASSETS_NAME), assetMode, metrics);
+    }
 
-            Process process = new ProcessBuilder(command).start();
-            process.waitFor();
+    /**
+     * Since I couldn't get sqlite jdbc driver running in native-image I use the sqlite3 CLI tool as a
+     * poor-mans alternative. The index contains an entry per note as well as one per headline (pointing to its
+     * dash-anchor) - these were handed to the writer while the notes were scanned.
+     */
+    private boolean renderSqliteDb(DocSetIndexWriter searchIndex) throws InterruptedException {
+        RenderEvents.Index event = new RenderEvents.Index();
+        event.begin();
+        try {
+            Path index = indexPath();
+            searchIndex.write(index);
+            if (event.shouldCommit()) {
+                event.index = "docSet.dsidx";
+                event.entries = searchIndex.size();
+                event.commit();
+            }
+            metrics.count("index.entries", searchIndex.size());
+            metrics.count("bytes.written", Files.size(index));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Couldn't create the search-index: " + e.getMessage());
+            return false;
         }
     }
 
     private void renderInfoPlist() throws IOException {
-        String pInfoListContent = plist
+        TemplateInstance pInfoListContent = plist
                 .data("bundleIdentifier", "notes")
-                .data("bundleName", "Notes")
-                .render();
+                .data("bundleName", "Notes");
 
-        Path file = Files.createFile(pathOf(contentsPath(), "Info.plist"));
-        Files.writeString(file, pInfoListContent, APPEND);
+        write(pathOf(contentsPath(), "Info.plist"), pInfoListContent);
     }
 
 
-    private void renderMainPage() throws IOException {
-        try (Stream<Path> paths = Files.list(config.getDocumentPath())) {
-            List<Month> items = paths
-                    .filter(p -> p.toString().endsWith("md"))
-                    .filter(p -> !p.getFileName().toString().startsWith("todo"))
-                    .collect(Collectors.groupingBy(p -> p.getFileName().toString().substring(0, 7)))
-                    .entrySet().stream()
-                    .map(entry -> new Month(
-                            entry.getKey(),
-                            entry.getValue().stream()
-                                    .map(filePath -> new Day(
-                                            removeAnyExtension(filePath.getFileName().toString()),
-                                            pathOf(documentsPath(), filePath.getFileName().toString() + ".html").toString(),
-                                            extractHeadlinesFrom(filePath)))
-                                    .sorted((day1, day2) -> day2.name.compareTo(day1.name)) // within a month sort by day-name (reverse order)
-                                    .toList()))
-                    .sorted((month1, month2) -> month2.name.compareTo(month1.name)) // between months sort by month-name (reverse order)
-                    .toList();
-
-            Files.writeString(Files.createFile(pathOf(documentsPath(), "index.html")),
-                    main.data("items", items).render(),
-                    APPEND);
-        }
+    private void renderMainPage(Corpus corpus) throws IOException {
+        List<Corpus.Note> notes = corpus.notes().stream()
+                .filter(n -> !n.name().startsWith("todo"))
+                .toList();
+        List<Month> items = Corpus.byMonth(notes).entrySet().stream()  // months and days in reverse order
+                .map(entry -> new Month(
+                        entry.getKey(),
+                        entry.getValue().stream()
+                                .map(note -> new Day(
+                                        removeAnyExtension(note.name()),
+                                        pathOf(documentsPath(), note.output()).toString(),
+                                        String.join(" | ", note.topLevelHeadlines())))
+                                .toList()))
+                .toList();
+
+        write(pathOf(documentsPath(), "index.html"), main.data("items", items));
     }
 
-    private void renderTocFrame() throws IOException {
-        try (Stream<Path> paths = Files.list(documentsPath())) {
-            List<Month> items = paths
-                    .filter(p -> p.toString().endsWith("html"))
-                    .filter(p -> !p.toString().startsWith("toc"))
-                    .filter(p -> !p.toString().startsWith("index"))
-                    .map(p -> p.getFileName().toString())
-                    .sorted(Comparator.reverseOrder())
-                    .collect(Collectors.groupingBy(p -> p.substring(0, 7)))
-                    .entrySet().stream()
-                    .map(e -> new Month(e.getKey(), e.getValue().stream()
-                            .map(f -> new Day(
-                                    removeAnyExtension(f),
-                                    pathOf(documentsPath(), f).toString(),
-                                    null)).toList()))
-                    .toList();
-            String currentFileName = items.stream()
-                    .reduce((first, second) -> second)
-                    .flatMap(m -> m.days().stream().findFirst().map(Day::fileName))
-                    .orElse("N/A");
-
-            Files.writeString(Files.createFile(pathOf(config.getDocumentOutputPath(), "toc.html")),
-                    toc.data("months", items).render(),
-                    APPEND);
-            Files.writeString(Files.createFile(pathOf(config.getDocumentOutputPath(), "index.html")),
-                    index.data("current", currentFileName).render(),
-                    APPEND);
-        }
+    private void renderTocFrame(Corpus corpus) throws IOException {
+        List<Month> items = Corpus.byMonth(corpus.notes()).entrySet().stream()
+                .map(e -> new Month(e.getKey(), e.getValue().stream()
+                        .map(note -> new Day(
+                                removeAnyExtension(note.output()),
+                                pathOf(documentsPath(), note.output()).toString(),
+                                null)).toList()))
+                .toList();
+        String currentFileName = items.stream()     // the most recent note is shown initially
+                .findFirst()
+                .flatMap(m -> m.days().stream().findFirst().map(Day::fileName))
+                .orElse("N/A");
+
+        write(pathOf(config.getDocumentOutputPath(), "toc.html"), toc.data("months", items));
+        write(pathOf(config.getDocumentOutputPath(), "index.html"), index.data("current", currentFileName));
     }
 
 
-    private String removeAnyExtension(String fileName) {
-        return fileName.substring(0, fileName.indexOf("."));
+    private void write(Path target, TemplateInstance template) throws IOException {
+        metrics.count("bytes.written", write(target, template, null, null));
     }
 
-    private String extractHeadlinesFrom(Path path) {
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(path);
-        } catch (Exception e) {
-            lines = List.of();
+    /*
+     * Streams the template into the target - chunk by chunk (see TemplateInstance#consume) through a buffered writer,
+     * so a page never exists as a whole on the heap (neither as string nor as bytes). The content (if any) is
+     * streamed in place of the given slot - which has to be handed to the template as the value to be replaced.
+     *
+     * @return number of bytes written
+     */
+    private long write(Path target, TemplateInstance template, String slot, Content content) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            template.consume(chunk -> {
+                try {
+                    int at = slot != null ? chunk.indexOf(slot) : -1;
+                    if (at < 0) {
+                        writer.write(chunk);
+                    } else {
+                        writer.write(chunk, 0, at);
+                        content.writeTo(writer);
+                        writer.write(chunk, at + slot.length(), chunk.length() - at - slot.length());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toCompletableFuture().join();
+            writer.flush();
+            return channel.position();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
         }
-        return lines.stream()
-                .filter(line -> line.startsWith("# "))
-                .map(line -> line.substring(2))
-                .collect(Collectors.joining(" | "));
     }
 
-    private void renderMarkdownFiles() throws IOException {
-        try (Stream<Path> paths = Files.list(config.getDocumentPath())) {
-
-            List<Path> markdownFiles = paths.filter(p -> p.toString().endsWith("md")).toList();
+    /**
+     * Content streamed into a page (see {@link #write(Path, TemplateInstance, String, Content)})
+     */
+    @FunctionalInterface
+    private interface Content {
+        void writeTo(Appendable output) throws IOException;
+    }
 
-            Parser parser = Parser.builder()
-                    .extensions(markdownExtensions)
-                    .build();
-            HtmlRenderer htmlRenderer = HtmlRenderer.builder()
-                    .extensions(markdownExtensions)
-                    .percentEncodeUrls(true)
-                    .nodeRendererFactory(CustomHtmlRenderer::new)
-                    .build();
+    private String removeAnyExtension(String fileName) {
+        return fileName.substring(0, fileName.indexOf("."));
+    }
 
-            for (Path filePath : markdownFiles) {
-                Node document = parser.parse(String.join("\n", Files.readAllLines(filePath)));
-                String output = htmlRenderer.render(document);
+    /**
+     * Renders the given notes in parallel (see {@link #threads}) - all at once, without the pipeline of a render
+     * (i.e. to measure rendering alone)
+     *
+     * @return source-names of those notes that couldn't be rendered (in the order they were given)
+     */
+    List<String> renderMarkdownFiles(List<Corpus.Note> toBeRendered, ForkJoinPool workers) throws InterruptedException {
+        Renderings renderings = new Renderings();
+        toBeRendered.forEach(note -> renderings.submit(workers, note, () -> {
+        }));
+        return renderings.await();
+    }
 
-                String htmlOutput = render
-                        .data("markdown_output", output)
-                        .render();
+    private Throwable rootCauseOf(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();           // fork-join wraps checked exceptions (even several times)
+        }
+        return cause;
+    }
 
-                Path file = Files.createFile(pathOf(documentsPath(), filePath.getFileName() + ".html"));
-                Files.writeString(file, htmlOutput, APPEND);
-            }
+    Path renderMarkdownFile(Corpus.Note note) throws IOException {
+        long start = metrics.start();
+        RenderEvents.Write writeEvent = new RenderEvents.Write();    // rendering streams right into the file
+        writeEvent.begin();
+        Path target = pathOf(documentsPath(), note.output());
+        long bytes = write(target,
+                render.instance()           // each worker uses its own template-instance
+                        .data("markdown_output", MARKDOWN_SLOT),
+                MARKDOWN_SLOT,
+                output -> markdown.render(note.document(), output));
+        if (writeEvent.shouldCommit()) {
+            writeEvent.note = note.name();
+            writeEvent.bytes = bytes;
+            writeEvent.commit();
         }
+
+        metrics.count("notes.rendered", 1);
+        metrics.count("bytes.written", bytes);
+        metrics.note(note.name(), start);
+        return target;
     }
 
     private Path contentsPath() {
-        return Paths.get(config.getDocumentOutputPath().toString(), DOCSET_NAME, CONTENTS);
+        return config.getDocumentOutputPath().resolve(DOCSET_NAME).resolve(CONTENTS);
     }
     private Path resourcesPath() {
-        return Paths.get(config.getDocumentOutputPath().toString(), DOCSET_NAME, CONTENTS, RESOURCES);
+        return contentsPath().resolve(RESOURCES);
     }
     private Path documentsPath() {
-        return Paths.get(config.getDocumentOutputPath().toString(), DOCSET_NAME, CONTENTS, RESOURCES, DOCUMENTS);
+        return resourcesPath().resolve(DOCUMENTS);
     }
-    private Path pathOf(Path contentsPath, String suffix) {
-        return Paths.get(contentsPath.toString(), suffix);
+    private Path indexPath() {
+        return pathOf(resourcesPath(), "docSet.dsidx");
     }
-
-    @RegisterForReflection
-    public record Month(String name, List<Day> days) {
+    private Path manifestPath() {
+        return config.getDocumentOutputPath().resolve(MANIFEST_NAME);
     }
-
-    @RegisterForReflection
-    public record Day(String name, String fileName, String description) {
+    private Path pathOf(Path contentsPath, String suffix) {
+        return contentsPath.resolve(suffix);
     }
 
     /**
-     * I post-process image links so that I don't have to copy the originals around
+     * The notes handed over to the workers (see {@link #threads}) - every note is written to its own output-file so
+     * the result doesn't depend on the order in which the workers finish. A note that cannot be rendered is reported
+     * but doesn't abort the whole run.
+     * <p/>
+     * Only the outcome of a rendering is kept - not its task, which would keep the note (and its parsed document)
+     * reachable until the end of the render.
      */
-    public static class CustomHtmlRenderer extends CoreHtmlNodeRenderer implements NodeRenderer {
-
-        private final HtmlWriter html;
-
-        CustomHtmlRenderer(HtmlNodeRendererContext context) {
-            super(context);
-            this.html = context.getWriter();
+    class Renderings {
+
+        private final Map<Integer, String> failures = new ConcurrentSkipListMap<>();   // by order of submission
+        private int submitted;
+        private int pending;
+
+        /**
+         * Renders the given note on one of the workers
+         *
+         * @param done called once the note is rendered (or failed to)
+         */
+        void submit(ExecutorService workers, Corpus.Note note, Runnable done) {
+            int index = submitted++;
+            String name = note.name();
+            synchronized (this) {
+                pending++;
+            }
+            workers.execute(() -> {
+                try {
+                    renderMarkdownFile(note);
+                } catch (IOException | RuntimeException e) {
+                    System.err.printf("Couldn't render '%s': %s%n", name, rootCauseOf(e));
+                    failures.put(index, name);
+                } finally {
+                    done.run();
+                    finished();
+                }
+            });
         }
 
-        @Override
-        public Set<Class<? extends Node>> getNodeTypes() {
-            return Set.of(Image.class, Heading.class);
+        /**
+         * Waits for all renderings submitted so far
+         *
+         * @return source-names of those notes that couldn't be rendered (in the order they were submitted)
+         */
+        synchronized List<String> await() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+            return List.copyOf(failures.values());
         }
 
-
-        @Override
-        public void render(Node node) {
-            if (Image.class.isAssignableFrom(node.getClass())) {
-                Image image = (Image) node;
-                html.tag("img",
-                        Map.of(
-                                "src", image.getDestination().replace("/img", ""),
-                                "alt", Optional.ofNullable(image.getTitle()).orElse("")
-                        ));
-            } else if (Heading.class.isAssignableFrom(node.getClass())) {
-                Heading heading = (Heading) node;
-                // before each heading we place a Dash-Anchor link to support a nice outline within Dash
-                // see https://kapeli.com/docsets#tableofcontents
-                this.html.tag("a", Map.of(
-                        "name", "//apple_ref/cpp/Entry/" + toLiteralText(heading).replaceAll(" ", "%20"),
-                        "class", "dashAnchor"
-                ));
-                this.html.tag("/a");
-                this.visit(heading);
+        private synchronized void finished() {
+            if (--pending == 0) {
+                notifyAll();
             }
         }
     }
 
-    /*
-     * In case of nexted elements for i.e. Headline this method recursively determines all _contained_
-     * Text-Nodes and renders their literal content concatenated.
-     */
-    static String toLiteralText(Node parent) {
-        Node next;
-        var titleBuffer = new StringBuilder();
-        for(Node node = parent.getFirstChild(); node != null; node = next) {
-            next = node.getNext();
-            if (node instanceof Text t) {
-                titleBuffer.append(t.getLiteral());
-            } else {
-                titleBuffer.append(toLiteralText(node));
-            }
-        }
-        return titleBuffer.toString();
+    @RegisterForReflection
+    public record Month(String name, List<Day> days) {
+    }
+
+    @RegisterForReflection
+    public record Day(String name, String fileName, String description) {
     }
 }
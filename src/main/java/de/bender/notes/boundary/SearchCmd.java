@@ -1,19 +1,29 @@
 package de.bender.notes.boundary;
 
 import de.bender.notes.control.Config;
-import io.smallrye.mutiny.tuples.Tuple2;
-import picocli.CommandLine;
+import de.bender.notes.control.HeadlineCache;
+import de.bender.notes.control.Metrics;
+import de.bender.notes.control.NeedleMatcher;
+import de.bender.notes.control.NoteFiles;
+import de.bender.notes.control.NoteScanner;
+import de.bender.notes.control.Period;
+import de.bender.notes.control.SearchIndex;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import javax.inject.Inject;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static java.lang.System.err;
 import static java.lang.System.out;
 
 @Command(
@@ -22,33 +32,158 @@ import static java.lang.System.out;
         description = "Searches the given needle in your haystack of notes. You can define several search-terms that will be OR-combined - i.e. notes search java codeing")
 public class SearchCmd implements Callable<Integer> {
 
+    private static final String HIGHLIGHT_ON = "\u001B[1;31m";
+    private static final String HIGHLIGHT_OFF = "\u001B[0m";
+
     @Inject
     Config config;
 
+    @Inject
+    SearchIndex searchIndex;
+
+    @Inject
+    HeadlineCache headlineCache;
+
+    @Inject
+    Terminal terminal;
+
     @Parameters(description = "The string you'd like to look for in your notes")
     List<String> needle = new ArrayList<>();
 
+    @Option(names = {"--no-index"},
+            description = "Scans all notes instead of using the (incrementally maintained) search-index")
+    boolean noIndex;
+
+    @Option(names = {"-e", "--regex"},
+            description = "Treats the needles as (OR-combined) regular expressions - implies --no-index. Back-references and look-arounds aren't supported")
+    boolean regex;
+
+    @Option(names = {"-H", "--headlines-only"},
+            description = "Only looks for the needle within the headlines of your notes (answered by the headline-cache)")
+    boolean headlinesOnly;
+
+    @Option(names = {"-n", "--limit"},
+            description = "Stops after the given number of matches")
+    int limit;
+
+    @Option(names = {"-l", "--files-with-matches"},
+            description = "Only prints the names of the notes containing a match")
+    boolean filesWithMatches;
+
+    @Option(names = {"-t", "--threads"},
+            description = "Number of workers scanning the notes in parallel when the search-index isn't used (defaults to the number of available cores)")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @Mixin
+    PeriodOptions periodOptions = new PeriodOptions();
+
+    @Mixin
+    StatsOptions statsOptions = new StatsOptions();
+
+    private NeedleMatcher matcher;
+    private Period period;
+
     @Override
     public Integer call() throws Exception {
-        Path documentPath = config.getDocumentPath();
-
-        String needle = String.join("|", this.needle);
-
-        List<Path> allNotes = Files.list(documentPath)
-                .filter(Files::isRegularFile)
-                .filter(p -> p.toString().endsWith("md"))
-                .sorted()
-                .toList();
-        for (Path note : allNotes) {
-            List<String> allLines = Files.readAllLines(note);
-            List<Tuple2<Integer, String>> matches = IntStream.range(0, allLines.size())
-                    .filter(i -> allLines.get(i).matches("(?i).*(" + needle + ").*"))
-                    .mapToObj(i -> Tuple2.of(i, allLines.get(i)))
+        try {
+            matcher = regex ? NeedleMatcher.regex(String.join("|", needle)) : NeedleMatcher.literal(needle);
+        } catch (IllegalArgumentException e) {
+            err.println("Invalid pattern: " + e.getMessage());
+            return 1;
+        }
+        period = periodOptions.period();
+        Metrics metrics = statsOptions.metrics();
+        NoteScanner.Summary summary;
+        try (Metrics.Phase ignored = metrics.phase(headlinesOnly ? "searchHeadlines" : (noIndex || regex) ? "scan" : "lookup")) {
+            summary = headlinesOnly ? searchHeadlines() : (noIndex || regex) ? scan() : lookup();
+        }
+
+        err.printf("%d match(es) in %d of %d note(s)%n", summary.matches(), summary.matchingFiles(), summary.scannedFiles());
+        metrics.count("matches", summary.matches());
+        metrics.count("notes.matching", summary.matchingFiles());
+        metrics.count("notes.scanned", summary.scannedFiles());
+        statsOptions.report(metrics);
+        return 0;
+    }
+
+    private NoteScanner.Summary lookup() throws IOException {
+        Map<Path, List<NoteScanner.Match>> matchesPerFile = new LinkedHashMap<>();
+        int matches = 0;
+        for (SearchIndex.Hit hit : searchIndex.search(this.needle, period)) {
+            if (limit > 0 && matches >= limit) {
+                break;
+            }
+            if (filesWithMatches && matchesPerFile.containsKey(hit.file())) {
+                continue;
+            }
+            matchesPerFile.computeIfAbsent(hit.file(), f -> new ArrayList<>())
+                    .add(new NoteScanner.Match(hit.line(), searchIndex.readLine(hit)));
+            matches++;
+        }
+
+        matchesPerFile.forEach((file, fileMatches) -> print(new NoteScanner.FileMatches(file, fileMatches)));
+        return new NoteScanner.Summary(matches, matchesPerFile.size(), searchIndex.size(period));
+    }
+
+    private NoteScanner.Summary searchHeadlines() throws IOException {
+        List<HeadlineCache.NoteHeadlines> allNotes = headlineCache.headlines(period);
+        int matches = 0;
+        int matchingFiles = 0;
+        for (HeadlineCache.NoteHeadlines note : allNotes) {
+            List<NoteScanner.Match> fileMatches = new ArrayList<>();
+            for (HeadlineCache.Entry entry : note.headlines()) {
+                if ((limit > 0 && matches >= limit) || (filesWithMatches && !fileMatches.isEmpty())) {
+                    break;
+                }
+                if (matcher.matches(entry.headline().text())) {
+                    fileMatches.add(new NoteScanner.Match(entry.line(), "#".repeat(entry.headline().level()) + " " + entry.headline().text()));
+                    matches++;
+                }
+            }
+            if (!fileMatches.isEmpty()) {
+                print(new NoteScanner.FileMatches(note.file(), fileMatches));
+                matchingFiles++;
+            }
+        }
+        return new NoteScanner.Summary(matches, matchingFiles, allNotes.size());
+    }
+
+    private NoteScanner.Summary scan() throws IOException, InterruptedException {
+        List<Path> allNotes;
+        try (Stream<Path> paths = NoteFiles.stream(config.getDocumentPath(), period)) {
+            allNotes = paths
+                    .filter(NoteFiles::isFile)
                     .toList();
+        }
 
-            matches.forEach(m -> out.println(note.getFileName() + ":" + m.getItem1() + "| " + m.getItem2()));
-            out.println();
+        return new NoteScanner(threads, limit, filesWithMatches)
+                .scan(allNotes, matcher, this::print);
+    }
+
+    private void print(NoteScanner.FileMatches fileMatches) {
+        if (filesWithMatches) {
+            out.println(fileMatches.file().getFileName());
+            return;
         }
-        return 0;
+        fileMatches.matches().forEach(m -> out.println(fileMatches.file().getFileName() + ":" + m.line() + "| " + highlight(m.text())));
+        out.println();
+    }
+
+    /*
+     * Emphasizes the matching regions of the given line - but only if we're writing to a terminal (the client's one,
+     * if executed by the daemon)
+     */
+    private String highlight(String line) {
+        if (!terminal.isInteractive()) {
+            return line;
+        }
+        StringBuilder highlighted = new StringBuilder(line.length() + 16);
+        int last = 0;
+        for (NeedleMatcher.Span span : matcher.find(line)) {
+            highlighted.append(line, last, span.start())
+                    .append(HIGHLIGHT_ON).append(line, span.start(), span.end()).append(HIGHLIGHT_OFF);
+            last = span.end();
+        }
+        return highlighted.append(line, last, line.length()).toString();
     }
 }
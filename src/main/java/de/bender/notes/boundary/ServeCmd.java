@@ -0,0 +1,324 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Config;
+import de.bender.notes.control.Corpus;
+import de.bender.notes.control.Headline;
+import de.bender.notes.control.HeadlineCache;
+import de.bender.notes.control.MarkdownService;
+import de.bender.notes.control.NoteFiles;
+import de.bender.notes.control.NoteService;
+import de.bender.notes.control.PageCache;
+import de.bender.notes.control.SearchIndex;
+import io.quarkus.qute.Template;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+@Command(name = "serve",
+        description = "Serves your notes on localhost - notes are rendered on demand (so there's no need for `notes render`) " +
+                "and can be searched via `/search?q=...` (returns JSON)")
+public class ServeCmd implements Callable<Integer> {
+
+    private static final String HTML = "text/html; charset=utf-8";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String NOTE_SUFFIX = ".html";
+    private static final Set<String> LOCAL_HOSTS = Set.of("localhost", "127.0.0.1", "[::1]");
+
+    @Inject
+    Config config;
+
+    @Inject
+    NoteService notes;
+
+    @Inject
+    MarkdownService markdown;
+
+    @Inject
+    SearchIndex searchIndex;
+
+    @Inject
+    HeadlineCache headlineCache;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    Template render;
+
+    @Inject
+    Template main;
+
+    @Inject
+    Template toc;
+
+    @Inject
+    Template index;
+
+
+    @Option(names = {"-p", "--port"},
+            description = "Port to listen on (only on localhost - default: ${DEFAULT-VALUE})",
+            defaultValue = "8090")
+    int port;
+
+    @Option(names = {"--cache-size"},
+            description = "Number of rendered notes kept in memory (default: ${DEFAULT-VALUE})",
+            defaultValue = "256")
+    int cacheSize;
+
+    @Option(names = {"--search-limit"},
+            description = "Max number of matches returned by a single search (default: ${DEFAULT-VALUE})",
+            defaultValue = "200")
+    int searchLimit;
+
+    private PageCache pages;
+
+    @Override
+    public Integer call() throws Exception {
+        notes.ensureDocumentsDirExists();
+        pages = new PageCache(Math.max(1, cacheSize));
+
+        HttpServer server = vertx.createHttpServer(new HttpServerOptions().setHost("localhost").setPort(port));
+        server.requestHandler(this::handle);
+        try {
+            server.listen().toCompletionStage().toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            System.err.printf("Couldn't listen on port %d: %s%n", port, e.getCause().getMessage());
+            return 1;
+        }
+        System.err.printf("Serving '%s' on http://localhost:%d/ (press Ctrl-C to stop)%n", config.getDocumentPath(), server.actualPort());
+
+        new CountDownLatch(1).await();              // the server runs on vert.x' threads - we just keep the process alive
+        return 0;
+    }
+
+    /*
+     * Rendering reads files - so requests are processed on worker-threads instead of the event-loop
+     */
+    private void handle(HttpServerRequest request) {
+        if (!isLocal(request.host(), request.localAddress().port())) {      // Host-header (or :authority of HTTP/2)
+            request.response().setStatusCode(403).end();
+            return;
+        }
+        if (request.method() != HttpMethod.GET) {
+            request.response().setStatusCode(405).putHeader(HttpHeaders.ALLOW, "GET").end();
+            return;
+        }
+        vertx.<Optional<PageCache.Page>>executeBlocking(promise -> {
+            try {
+                promise.complete(resolve(request));
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, result -> {
+            if (result.failed()) {
+                System.err.printf("Couldn't serve '%s': %s%n", request.path(), result.cause());
+                request.response().setStatusCode(500).end();
+            } else if (result.result().isEmpty()) {
+                request.response().setStatusCode(404).end();
+            } else {
+                send(request, result.result().get());
+            }
+        });
+    }
+
+    /*
+     * Only requests addressed to localhost (on our port) are answered - otherwise any web-page could read the notes
+     * by pointing its own domain to 127.0.0.1 (DNS rebinding)
+     */
+    private static boolean isLocal(String host, int port) {
+        if (host == null) {
+            return false;
+        }
+        String normalized = host.toLowerCase(Locale.ROOT);
+        return LOCAL_HOSTS.stream()
+                .anyMatch(local -> normalized.equals(local + ":" + port) || (port == 80 && normalized.equals(local)));
+    }
+
+    private Optional<PageCache.Page> resolve(HttpServerRequest request) throws IOException {
+        String path = request.path();
+        return switch (path) {
+            case "/", "/index.html" -> Optional.of(indexPage());
+            case "/toc.html" -> Optional.of(tocPage());
+            case "/main.html" -> Optional.of(mainPage());
+            case "/search" -> Optional.of(search(request.params().getAll("q"), request.getParam("limit")));
+            default -> {
+                String name = path.substring(path.lastIndexOf('/') + 1);    // everything is served flat (like in the DocSet)
+                yield name.endsWith(".md" + NOTE_SUFFIX)
+                        ? note(name.substring(0, name.length() - NOTE_SUFFIX.length()))
+                        : image(name);
+            }
+        };
+    }
+
+    /*
+     * Pages are validated by their ETag - so the browser revalidates each time (notes change) but only receives
+     * the content if it actually changed
+     */
+    private void send(HttpServerRequest request, PageCache.Page page) {
+        HttpServerResponse response = request.response()
+                .putHeader(HttpHeaders.ETAG, page.etag())
+                .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), page.etag())) {
+            response.setStatusCode(304).end();
+            return;
+        }
+
+        response.putHeader(HttpHeaders.CONTENT_TYPE, page.contentType());
+        if (page.gzipped() != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .end(Buffer.buffer(page.gzipped()));
+        } else {
+            response.end(Buffer.buffer(page.body()));
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        return ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag) || ("W/" + tag).equals(etag));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && Arrays.stream(acceptEncoding.split(","))
+                .map(String::trim)
+                .anyMatch(encoding -> encoding.equals("gzip") || (encoding.startsWith("gzip;") && !encoding.replace(" ", "").endsWith("q=0")));
+    }
+
+    /*
+     * A note is only rendered if it's requested for the first time or it changed since it was rendered
+     */
+    private Optional<PageCache.Page> note(String name) throws IOException {
+        Optional<Path> file = notes.findNote(name);         // archived notes are served, too
+        Optional<NoteFiles.Stat> stat = file.isPresent() ? NoteFiles.stat(file.get()) : Optional.empty();
+        if (stat.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long modified = stat.get().modified();
+        Optional<PageCache.Page> cached = pages.get(name, modified, stat.get().size());
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        String content = new String(NoteFiles.read(file.get()), StandardCharsets.UTF_8);
+        String html = render.instance()
+                .data("markdown_output", markdown.render(markdown.parse(content)))
+                .render();
+        PageCache.Page page = PageCache.Page.of(HTML, html.getBytes(StandardCharsets.UTF_8));
+        pages.put(name, modified, stat.get().size(), page);
+        return Optional.of(page);
+    }
+
+    private Optional<PageCache.Page> image(String name) throws IOException {
+        Path file = config.getStaticContentPath().resolve(name);
+        if (name.isEmpty() || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        String contentType = Optional.ofNullable(Files.probeContentType(file)).orElse("application/octet-stream");
+        return Optional.of(PageCache.Page.of(contentType, Files.readAllBytes(file)));
+    }
+
+    private PageCache.Page indexPage() throws IOException {
+        String current = byMonth(headlineCache.headlines()).values().stream()     // the most recent note is shown initially
+                .flatMap(List::stream)
+                .findFirst()
+                .map(n -> n.file().getFileName() + NOTE_SUFFIX)
+                .orElse("main.html");
+        return PageCache.Page.of(HTML, index.data("current", current).render().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PageCache.Page tocPage() throws IOException {
+        List<RenderCmd.Month> items = byMonth(headlineCache.headlines()).entrySet().stream()
+                .map(e -> new RenderCmd.Month(e.getKey(), e.getValue().stream()
+                        .map(note -> new RenderCmd.Day(nameOf(note), note.file().getFileName() + NOTE_SUFFIX, null))
+                        .toList()))
+                .toList();
+        return PageCache.Page.of(HTML, toc.data("months", items).render().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PageCache.Page mainPage() throws IOException {
+        List<HeadlineCache.NoteHeadlines> allNotes = headlineCache.headlines().stream()
+                .filter(n -> !n.file().getFileName().toString().startsWith("todo"))
+                .toList();
+        List<RenderCmd.Month> items = byMonth(allNotes).entrySet().stream()
+                .map(e -> new RenderCmd.Month(e.getKey(), e.getValue().stream()
+                        .map(note -> new RenderCmd.Day(
+                                nameOf(note),
+                                note.file().getFileName() + NOTE_SUFFIX,
+                                note.headlines().stream()
+                                        .map(HeadlineCache.Entry::headline)
+                                        .filter(Headline::isTopLevel)
+                                        .map(Headline::text)
+                                        .collect(Collectors.joining(" | "))))
+                        .toList()))
+                .toList();
+        return PageCache.Page.of(HTML, main.data("items", items).render().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PageCache.Page search(List<String> needles, String limitParam) throws IOException {
+        int limit = searchLimit;
+        try {
+            limit = limitParam == null ? searchLimit : Math.min(searchLimit, Integer.parseInt(limitParam));
+        } catch (NumberFormatException e) {
+            // just use the default
+        }
+
+        JsonArray matches = new JsonArray();
+        for (SearchIndex.Hit hit : needles.isEmpty() ? List.<SearchIndex.Hit>of() : searchIndex.search(needles)) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            String note = hit.file().getFileName().toString();
+            matches.add(new JsonObject()
+                    .put("note", note)
+                    .put("href", note + NOTE_SUFFIX)
+                    .put("line", hit.line())
+                    .put("text", searchIndex.readLine(hit)));
+        }
+        return PageCache.Page.of(JSON, matches.encode().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Months as well as the notes within a month in reverse order (so the most recent ones come first)
+     */
+    private static Map<String, List<HeadlineCache.NoteHeadlines>> byMonth(List<HeadlineCache.NoteHeadlines> allNotes) {
+        return allNotes.stream()
+                .sorted(Comparator.comparing((HeadlineCache.NoteHeadlines n) -> n.file().getFileName().toString()).reversed())
+                .collect(Collectors.groupingBy(n -> Corpus.monthOf(n.file().getFileName().toString()),
+                        () -> new TreeMap<String, List<HeadlineCache.NoteHeadlines>>(Comparator.reverseOrder()), Collectors.toList()));
+    }
+
+    private static String nameOf(HeadlineCache.NoteHeadlines note) {
+        String fileName = note.file().getFileName().toString();
+        return fileName.substring(0, fileName.indexOf('.'));
+    }
+}
@@ -0,0 +1,44 @@
+package de.bender.notes.boundary;
+
+import de.bender.notes.control.Metrics;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Options of commands that are able to report metrics about their execution (see {@link Metrics}) - without any of
+ * these options nothing is measured at all.
+ */
+public class StatsOptions {
+
+    @Option(names = {"--stats"},
+            description = "Prints the time spent per phase, counters (like files and bytes read/written) and the slowest notes to stderr")
+    boolean stats;
+
+    @Option(names = {"--stats-json"},
+            description = "Writes the same metrics as JSON into the given file (i.e. for tracking them in CI)")
+    Path statsFile;
+
+    @Option(names = {"--slowest"},
+            description = "Number of slowest notes to be reported (default: ${DEFAULT-VALUE})",
+            defaultValue = "10")
+    int slowest = 10;
+
+    /**
+     * @return a fresh collector if metrics were requested - a no-op one otherwise
+     */
+    Metrics metrics() {
+        return stats || statsFile != null ? Metrics.enabled() : Metrics.disabled();
+    }
+
+    void report(Metrics metrics) throws IOException {
+        if (stats) {
+            metrics.print(System.err, slowest);
+        }
+        if (statsFile != null) {
+            Files.writeString(statsFile, metrics.toJson(slowest));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.bender.notes.boundary;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Tells whether the output of the current command ends up on a terminal - for commands executed by the daemon (see
+ * {@link DaemonCmd}) that's the terminal of the client, not the one of the daemon.
+ */
+@ApplicationScoped
+public class Terminal {
+
+    private volatile Boolean client;            // set for the duration of a forwarded request only
+
+    /**
+     * @return true if the output is written to a terminal (so it may contain i.e. ANSI escape-codes)
+     */
+    public boolean isInteractive() {
+        Boolean interactive = client;
+        return interactive != null ? interactive : System.console() != null;
+    }
+
+    /**
+     * Takes over the terminal-state of the given client - until {@link #detach()} is called
+     */
+    void attach(boolean interactive) {
+        client = interactive;
+    }
+
+    void detach() {
+        client = null;
+    }
+}
@@ -1,17 +1,13 @@
 package de.bender.notes.boundary;
 
-import de.bender.notes.control.NoteService;
+import de.bender.notes.control.TodoStore;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import javax.inject.Inject;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.Callable;
 
 @Command(name = "todo",
@@ -19,14 +15,11 @@ import java.util.concurrent.Callable;
         description = "Creates a new todo entry to the current todo-list")
 public class TodoCmd implements Callable<Integer> {
 
-    private static String DONE_PREFIX = "- [X]";
-    private static String OPEN_PREFIX = "- [ ]";
-
     @Inject
-    NoteService notes;
+    TodoStore todos;
 
     @Option(names = {"-c", "--clear"},
-            description = "Clears tasks that were marked done (deletes 'em)",
+            description = "Clears tasks that were marked done (deletes 'em) - also happens when no new todo is given",
             defaultValue = "false")
     boolean clear;
 
@@ -35,39 +28,14 @@ public class TodoCmd implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
-        Path noteFile = notes.ensureTodoFileExists();
-        List<String> currentFileContent = Files.readAllLines(noteFile);
-        Files.deleteIfExists(noteFile);
-        Files.createFile(noteFile);
-
-        StringBuilder fileContent = new StringBuilder();
-
-        // first entry is the new todo
         if (! this.newTodoContent.isEmpty()) {
-            fileContent.append(OPEN_PREFIX)
-                    .append(" ")
-                    .append(String.join(" ", this.newTodoContent))
-                    .append("\n");
+            todos.add(String.join(" ", this.newTodoContent));
         }
 
-        for (String line : currentFileContent) {
-            if (!todoIsMarkedAsDone(line)) {
-                fileContent
-                        .append(line)
-                        .append("\n");
-            }
-        }
-
-        if (fileContent.length() > 0) {
-            Files.writeString(noteFile, fileContent.toString(), StandardOpenOption.WRITE);
+        if (clear || this.newTodoContent.isEmpty()) {
+            todos.clearDone();
         }
 
         return 0;
     }
-
-    private boolean todoIsMarkedAsDone(String line) {
-        return Objects.nonNull(line)
-                && line.length() >= DONE_PREFIX.length()
-                && (line.startsWith(DONE_PREFIX) || line.startsWith(DONE_PREFIX.toLowerCase()));
-    }
 }
@@ -22,7 +22,7 @@ public class ViewCmd implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
-        Path noteFile = notes.getNoteFile(fileName);
+        Path noteFile = notes.getReadableNoteFile(fileName);
 
         Process process = new ProcessBuilder("mdcat", noteFile.toString())
                 .inheritIO()
@@ -0,0 +1,109 @@
+package de.bender.notes.control;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over a set of needles - finds all occurrences of all needles within a single pass over
+ * the haystack (so the effort doesn't depend on the number of needles).
+ * <p/>
+ * The automaton works on plain {@code int}-symbols so it can be fed with chars as well as bytes - normalization
+ * (like case-folding) is up to the caller and has to be applied to needles and haystack alike. Transitions for
+ * symbols below {@value #DENSE_SYMBOLS} are pre-computed into a dense table (so the common ASCII-case is a single
+ * array lookup), all others follow the failure links at runtime.
+ */
+public class AhoCorasick {
+
+    private static final int DENSE_SYMBOLS = 256;
+    private static final int ROOT = 0;
+
+    private final int[] dense;
+    private final List<Map<Integer, Integer>> children;
+    private final int[] fail;
+    private final int[] longest;
+
+    /**
+     * @param needles the (already normalized) needles as sequence of symbols - empty needles are ignored
+     */
+    public AhoCorasick(List<int[]> needles) {
+        this.children = new ArrayList<>();
+        List<Integer> needleLength = new ArrayList<>();
+        children.add(new HashMap<>());
+        needleLength.add(0);
+
+        for (int[] needle : needles) {
+            int state = ROOT;
+            for (int symbol : needle) {
+                Integer next = children.get(state).get(symbol);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    needleLength.add(0);
+                    children.get(state).put(symbol, next);
+                }
+                state = next;
+            }
+            if (needle.length > 0) {
+                needleLength.set(state, needle.length);
+            }
+        }
+
+        int states = children.size();
+        this.fail = new int[states];
+        this.longest = new int[states];
+        this.dense = new int[states * DENSE_SYMBOLS];
+
+        // breadth-first so the failure-target of a state is always complete before the state itself
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            longest[state] = Math.max(needleLength.get(state), state == ROOT ? 0 : longest[fail[state]]);
+
+            for (int symbol = 0; symbol < DENSE_SYMBOLS; symbol++) {
+                Integer child = children.get(state).get(symbol);
+                if (child != null) {
+                    dense[state * DENSE_SYMBOLS + symbol] = child;
+                } else {
+                    dense[state * DENSE_SYMBOLS + symbol] = state == ROOT ? ROOT : dense[fail[state] * DENSE_SYMBOLS + symbol];
+                }
+            }
+            for (Map.Entry<Integer, Integer> child : children.get(state).entrySet()) {
+                fail[child.getValue()] = state == ROOT ? ROOT : step(fail[state], child.getKey());
+                queue.add(child.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the state reached from the given one when consuming the given symbol
+     */
+    public int step(int state, int symbol) {
+        if (symbol >= 0 && symbol < DENSE_SYMBOLS) {
+            return dense[state * DENSE_SYMBOLS + symbol];
+        }
+        for (int current = state; ; current = fail[current]) {
+            Integer next = children.get(current).get(symbol);
+            if (next != null) {
+                return next;
+            }
+            if (current == ROOT) {
+                return ROOT;
+            }
+        }
+    }
+
+    /**
+     * @return the length of the longest needle ending in the given state (0 if no needle ends here)
+     */
+    public int longestMatch(int state) {
+        return longest[state];
+    }
+
+    public static int initialState() {
+        return ROOT;
+    }
+}
@@ -0,0 +1,385 @@
+package de.bender.notes.control;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Publishes the static content of the notes-dir (the images within `img/`) into the docset - one flat directory,
+ * just like the rendered notes. Depending on the {@link Mode} an asset is copied, cloned (reflink), hard- or
+ * symlinked - modes that aren't supported by the file-system (i.e. hardlinks across devices) fall back to a copy.
+ * <p/>
+ * What was published is remembered in a tab-separated bookkeeping-file (next to the render-manifest) - so unchanged
+ * assets are skipped by size and modification-time (or, if just these changed, by their content-hash) and assets
+ * that vanished from `img/` are removed again. Copies of identical images are deduplicated: only the first one is
+ * copied, all others become hardlinks of it.
+ */
+public class AssetPublisher {
+
+    private static final String SEPARATOR = "\t";
+    private static final String NO_HASH = "-";
+
+    public enum Mode {
+        /** independent copies (the default) */
+        COPY,
+        /** hardlinks to the originals - no extra space, still real files within the docset */
+        LINK,
+        /** copy-on-write clones (APFS, btrfs, XFS) - no extra space until an original changes */
+        REFLINK,
+        /** symlinks to the originals - the docset only works as long as the notes-dir is around */
+        SYMLINK;
+
+        /**
+         * @throws IllegalArgumentException if the given mode is unknown
+         */
+        public static Mode of(String mode) {
+            try {
+                return valueOf(mode.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown asset-mode '" + mode + "' (use 'copy', 'link', 'reflink' or 'symlink')");
+            }
+        }
+
+        /*
+         * @return whether the published asset occupies space of its own (and is thus worth deduplicating)
+         */
+        private boolean isCopy() {
+            return this == COPY || this == REFLINK;
+        }
+    }
+
+    private final Path bookkeepingFile;
+    private final Mode mode;
+    private final Metrics metrics;
+
+    /**
+     * @param bookkeepingFile remembering what was published by the last run
+     * @param mode            how assets are published
+     */
+    public AssetPublisher(Path bookkeepingFile, Mode mode, Metrics metrics) {
+        this.bookkeepingFile = bookkeepingFile;
+        this.mode = mode;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the bookkeeping-file as well as all assets published into the given directory (that are still there) -
+     * these survive a full render (see {@link NoteService#reinitOutput(Path, Set)}) and are skipped if unchanged
+     */
+    public Set<Path> published(Path destinationDir) {
+        Set<Path> published = new HashSet<>();
+        if (Files.exists(bookkeepingFile)) {
+            published.add(bookkeepingFile);
+            load().keySet().stream()
+                    .map(destinationDir::resolve)
+                    .filter(p -> Files.exists(p, LinkOption.NOFOLLOW_LINKS))
+                    .forEach(published::add);
+        }
+        return published;
+    }
+
+    /**
+     * Publishes all files below the source-dir into the destination-dir - only added and changed ones are copied or
+     * linked (distributed among the given workers). Assets that were published before but don't exist anymore are
+     * removed.
+     *
+     * @throws IOException if the source-dir cannot be listed or the bookkeeping cannot be stored - failures of single
+     *                     assets are reported but don't fail the whole run
+     */
+    public void publish(Path sourceDir, Path destinationDir, ExecutorService workers) throws IOException, InterruptedException {
+        Map<String, Published> previous = load();
+        Map<String, Path> sources = new TreeMap<>();
+        if (Files.isDirectory(sourceDir)) {
+            try (Stream<Path> walk = Files.walk(sourceDir)) {
+                walk.filter(Files::isRegularFile)
+                        .sorted()
+                        .forEach(source -> sources.put(source.getFileName().toString(), source));   // flat - the last one wins
+            }
+        }
+
+        Map<String, Published> current = new TreeMap<>();
+        List<Task> changed = new ArrayList<>();
+        for (Map.Entry<String, Path> source : sources.entrySet()) {
+            Path destination = destinationDir.resolve(source.getKey());
+            Published published = previous.get(source.getKey());
+            if (published != null && isUpToDate(published, source.getValue(), destination)) {
+                current.put(source.getKey(), published);
+            } else {
+                changed.add(new Task(source.getKey(), source.getValue(), destination, published));
+            }
+        }
+        metrics.count("images.unchanged", current.size());
+
+        // content-hashes are needed for deduplication and to tell a `touch` from a change - but only of these assets
+        List<Task> toBePublished = new ArrayList<>();
+        for (Task task : run(workers, changed, this::inspect)) {
+            if (task.reusable != null) {
+                current.put(task.name, task.reusable);
+            } else {
+                toBePublished.add(task);
+            }
+        }
+
+        // one asset per distinct content is copied (in parallel) - the other ones become hardlinks to it
+        Map<String, Path> copiesByHash = new LinkedHashMap<>();
+        current.values().stream()
+                .filter(p -> p.published().isCopy())
+                .forEach(p -> copiesByHash.putIfAbsent(p.hash(), destinationDir.resolve(p.name())));
+        List<Task> originals = new ArrayList<>();
+        List<Task> duplicates = new ArrayList<>();
+        for (Task task : toBePublished) {
+            if (mode.isCopy() && copiesByHash.containsKey(task.hash)) {
+                duplicates.add(task);
+            } else {
+                copiesByHash.putIfAbsent(task.hash, task.destination);
+                originals.add(task);
+            }
+        }
+        for (Task task : run(workers, originals, this::publish)) {
+            current.put(task.name, task.published);
+        }
+        for (Task task : run(workers, duplicates, task -> link(task, copiesByHash.get(task.hash)))) {
+            current.put(task.name, task.published);
+        }
+
+        for (String vanished : previous.keySet()) {
+            if (!sources.containsKey(vanished)) {
+                Files.deleteIfExists(destinationDir.resolve(vanished));
+                metrics.count("images.removed", 1);
+            }
+        }
+        if (!current.equals(previous)) {
+            store(current);
+        }
+    }
+
+    /*
+     * A hardlink is the original itself, a symlink has to point to it - copies are checked against the bookkeeping
+     * (the source as well as the published file must be unchanged)
+     */
+    private boolean isUpToDate(Published published, Path source, Path destination) {
+        if (published.requested() != mode) {
+            return false;
+        }
+        try {
+            return switch (published.published()) {
+                case LINK -> !Files.isSymbolicLink(destination) && Files.exists(destination) && Files.isSameFile(destination, source);
+                case SYMLINK -> Files.isSymbolicLink(destination) && Files.readSymbolicLink(destination).equals(source.toAbsolutePath());
+                default -> published.source().equals(stat(source)) && published.stat().equals(stat(destination));
+            };
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /*
+     * Computes the content-hash (for copies only) - if it didn't change and the published copy is still intact the
+     * asset is just re-stamped instead of copied again
+     */
+    private void inspect(Task task) throws IOException {
+        task.stat = stat(task.source);
+        task.hash = mode.isCopy() ? hash(task.source) : NO_HASH;
+        Published previous = task.previous;
+        if (previous != null && previous.requested() == mode && previous.published().isCopy() && previous.hash().equals(task.hash)
+                && Files.exists(task.destination, LinkOption.NOFOLLOW_LINKS) && previous.stat().equals(stat(task.destination))) {
+            task.reusable = new Published(task.name, task.hash, task.stat, previous.stat(), mode, previous.published());
+        }
+    }
+
+    private void publish(Task task) throws IOException {
+        Files.deleteIfExists(task.destination);     // it might be a hardlink - which must not be overwritten in place
+        Mode published = switch (mode) {
+            case LINK -> tryToLink(task.destination, task.source) ? Mode.LINK : copy(task.source, task.destination);
+            case SYMLINK -> {
+                Files.createSymbolicLink(task.destination, task.source.toAbsolutePath());
+                yield Mode.SYMLINK;
+            }
+            case REFLINK -> clone(task.source, task.destination) ? Mode.REFLINK : copy(task.source, task.destination);
+            default -> copy(task.source, task.destination);
+        };
+        metrics.count(published.isCopy() ? "images.copied" : "images.linked", 1);
+        if (published == Mode.COPY) {
+            metrics.count("bytes.written", task.stat.size());
+        }
+        task.published = new Published(task.name, task.hash, task.stat, stat(task.destination), mode, published);
+    }
+
+    private void link(Task task, Path original) throws IOException {
+        Files.deleteIfExists(task.destination);
+        if (!tryToLink(task.destination, original)) {
+            publish(task);
+            return;
+        }
+        metrics.count("images.deduplicated", 1);
+        // a hardlink to a copy is checked just like a copy
+        task.published = new Published(task.name, task.hash, task.stat, stat(task.destination), mode, Mode.COPY);
+    }
+
+    private boolean tryToLink(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            return false;                           // i.e. another device (EXDEV) - a copy will do
+        }
+    }
+
+    private Mode copy(Path source, Path destination) throws IOException {
+        Files.copy(source, destination, REPLACE_EXISTING, COPY_ATTRIBUTES);
+        return Mode.COPY;
+    }
+
+    /*
+     * Java has no API for cloning files - so `cp` does it (its flags differ between macOS and Linux)
+     */
+    private boolean clone(Path source, Path destination) throws IOException {
+        List<String> command = System.getProperty("os.name").toLowerCase().contains("mac")
+                ? List.of("cp", "-c", "-p", source.toString(), destination.toString())
+                : List.of("cp", "--reflink=always", "--preserve=timestamps", source.toString(), destination.toString());
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Files.deleteIfExists(destination);          // not supported by the file-system - a copy will do
+        return false;
+    }
+
+    /*
+     * Runs the given step for all tasks on the workers
+     *
+     * @return the tasks that succeeded - a failing asset is reported (and not published, so the next run retries)
+     */
+    private List<Task> run(ExecutorService workers, List<Task> tasks, Step step) throws InterruptedException {
+        List<Future<Task>> futures = new ArrayList<>();
+        for (Task task : tasks) {
+            futures.add(workers.submit((Callable<Task>) () -> {
+                step.apply(task);
+                return task;
+            }));
+        }
+        List<Task> succeeded = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                succeeded.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                System.err.printf("Couldn't publish '%s': %s%n", tasks.get(i).name, e.getCause());
+            }
+        }
+        return succeeded;
+    }
+
+    private static NoteFiles.Stat stat(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        return new NoteFiles.Stat(attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    private static String hash(Path file) throws IOException {
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(((DigestInputStream) in).getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    private Map<String, Published> load() {
+        if (Files.notExists(bookkeepingFile)) {
+            return new TreeMap<>();
+        }
+        try (Stream<String> lines = Files.lines(bookkeepingFile)) {
+            return lines.map(line -> line.split(SEPARATOR, -1))
+                    .filter(parts -> parts.length == 8)
+                    .map(parts -> new Published(parts[0], parts[1],
+                            new NoteFiles.Stat(Long.parseLong(parts[2]), Long.parseLong(parts[3])),
+                            new NoteFiles.Stat(Long.parseLong(parts[4]), Long.parseLong(parts[5])),
+                            Mode.valueOf(parts[6]), Mode.valueOf(parts[7])))
+                    .collect(Collectors.toMap(Published::name, p -> p, (a, b) -> b, TreeMap::new));
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Couldn't read the published assets (publishing all of them again): " + bookkeepingFile);
+            return new TreeMap<>();
+        }
+    }
+
+    private void store(Map<String, Published> published) throws IOException {
+        List<String> lines = published.values().stream()
+                .sorted(Comparator.comparing(Published::name))
+                .map(p -> String.join(SEPARATOR, p.name(), p.hash(), String.valueOf(p.source().modified()), String.valueOf(p.source().size()),
+                        String.valueOf(p.stat().modified()), String.valueOf(p.stat().size()), p.requested().name(), p.published().name()))
+                .toList();
+        Path tmp = bookkeepingFile.resolveSibling(bookkeepingFile.getFileName() + ".tmp");
+        Files.write(tmp, lines);
+        Files.move(tmp, bookkeepingFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Task task) throws IOException;
+    }
+
+    /*
+     * An added or changed asset - stat and hash of the source are filled in by #inspect, the outcome by #publish
+     */
+    private static final class Task {
+        private final String name;
+        private final Path source;
+        private final Path destination;
+        private final Published previous;
+        private NoteFiles.Stat stat;
+        private String hash;
+        private Published reusable;
+        private Published published;
+
+        private Task(String name, Path source, Path destination, Published previous) {
+            this.name = name;
+            this.source = source;
+            this.destination = destination;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * @param name      file-name of the asset (within `img/` as well as within the docset)
+     * @param hash      content-hash (of copies only)
+     * @param source    modification-time and size of the original at the time it was published
+     * @param stat      modification-time and size of the published file (the link itself for symlinks)
+     * @param requested the mode the asset was published for
+     * @param published the mode it was actually published with (a copy if the requested one isn't supported)
+     */
+    private record Published(String name, String hash, NoteFiles.Stat source, NoteFiles.Stat stat, Mode requested, Mode published) {
+    }
+}
@@ -6,19 +6,34 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.attribute.PosixFilePermission.*;
 
+/**
+ * Provides access to the tool's configuration which is stored in {@code ~/.config/notes} as simple
+ * {@code KEY=value} lines.
+ * <p/>
+ * The file is parsed only once into an immutable {@link Snapshot} - which is re-read only when the file's
+ * modification-time (or size) changes. Every value can be overridden by a system-property (i.e.
+ * {@code -Dnotes.doc.dir=...} for {@code NOTES_DOC_DIR}) or an environment-variable of the same name as the key
+ * (i.e. {@code NOTES_DOC_DIR=...}) - in that order of precedence.
+ */
 @ApplicationScoped
 public class Config {
 
@@ -33,29 +48,114 @@ public class Config {
     private static final String CONF_VALUE_NOTES_OUTPUT_DIR = "Documents/notes/output";
     private static final String CONF_KEY_TODO_FILE_NAME = "TODO_FILE_NAME";
     private static final String CONF_VALUE_TODO_FILE_NAME = "todo.md";
+    private static final String CONF_KEY_NOTES_LAYOUT = "NOTES_LAYOUT";
+    private static final String CONF_VALUE_NOTES_LAYOUT = "flat";
+    private static final String CONF_KEY_ARCHIVE_AGE = "NOTES_ARCHIVE_AGE";
+    private static final String CONF_VALUE_ARCHIVE_AGE = "1y";
+    private static final String CONF_KEY_FSYNC = "NOTES_FSYNC";
+    private static final String CONF_VALUE_FSYNC = "none";
+    private static final String CONF_KEY_ASSET_MODE = "NOTES_ASSET_MODE";
+    private static final String CONF_VALUE_ASSET_MODE = "copy";
 
 
+    private static final String CONF_KEY_DAEMON_SOCKET = "NOTES_DAEMON_SOCKET";
+    private static final String CONF_VALUE_DAEMON_SOCKET = "notes.sock";
+
+    private static final String INDEX_DIR_NAME = ".notes";
+
     private static final String DATE_PATTERN_FORMAT = "yyyy-MM-dd";
 
     private static final Map<String, String> DEFAULT_CONFIG = Map.of(
             CONF_KEY_NOTES_DOC_DIR, Paths.get(System.getProperty("user.home"), CONF_VALUE_NOTES_DOC_DIR).toString(),
             CONF_KEY_NOTES_OUTPUT_DIR, Paths.get(System.getProperty("user.home"), CONF_VALUE_NOTES_OUTPUT_DIR).toString(),
             CONF_KEY_EDITOR, CONF_VALUE_EDITOR,
-            CONF_KEY_TODO_FILE_NAME, CONF_VALUE_TODO_FILE_NAME
+            CONF_KEY_TODO_FILE_NAME, CONF_VALUE_TODO_FILE_NAME,
+            CONF_KEY_NOTES_LAYOUT, CONF_VALUE_NOTES_LAYOUT,
+            CONF_KEY_ARCHIVE_AGE, CONF_VALUE_ARCHIVE_AGE,
+            CONF_KEY_FSYNC, CONF_VALUE_FSYNC,
+            CONF_KEY_ASSET_MODE, CONF_VALUE_ASSET_MODE
     );
+    // keys that can be overridden - the optional ones (without a default) as well
+    private static final Set<String> KNOWN_KEYS = Stream.concat(DEFAULT_CONFIG.keySet().stream(), Stream.of(CONF_KEY_DAEMON_SOCKET))
+            .collect(Collectors.toUnmodifiableSet());
 
     private static final String CONFIG_DIR = String.format("%s%s%s", System.getProperty("user.home"), FileSystems.getDefault().getSeparator(), ".config");
     private static final String CONFIG_FILE = String.format("%s%s%s", CONFIG_DIR, FileSystems.getDefault().getSeparator(), "notes");
 
+    private volatile Snapshot snapshot;
+
     public Path getDocumentPath() {
-        return Paths.get(readConfigValue(CONF_KEY_NOTES_DOC_DIR));
+        return require(snapshot().documentPath(), CONF_KEY_NOTES_DOC_DIR);
     }
     public Path getStaticContentPath() {
-        return Paths.get(readConfigValue(CONF_KEY_NOTES_DOC_DIR), "img");
+        return require(snapshot().staticContentPath(), CONF_KEY_NOTES_DOC_DIR);
     }
 
     public Path getDocumentOutputPath() {
-        return Paths.get(readConfigValue(CONF_KEY_NOTES_OUTPUT_DIR));
+        return require(snapshot().documentOutputPath(), CONF_KEY_NOTES_OUTPUT_DIR);
+    }
+
+    /**
+     * @return the (hidden) directory within the notes-dir where indexes and caches are kept
+     */
+    public Path getIndexPath() {
+        return getDocumentPath().resolve(INDEX_DIR_NAME);
+    }
+
+    /**
+     * @return the layout new notes are placed in (see {@link NoteFiles}) - `flat` unless configured otherwise
+     * @throws IllegalStateException if the configured layout is unknown
+     */
+    public NoteFiles.Layout getNotesLayout() {
+        String layout = Optional.ofNullable(snapshot().values().get(CONF_KEY_NOTES_LAYOUT)).orElse(CONF_VALUE_NOTES_LAYOUT);
+        try {
+            return NoteFiles.Layout.valueOf(layout.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Unknown " + CONF_KEY_NOTES_LAYOUT + " '" + layout + "' (use 'flat' or 'sharded')");
+        }
+    }
+
+    /**
+     * @return the age (i.e. `1y` or `6m`) after which `notes archive` moves notes into the archive
+     */
+    public String getArchiveAge() {
+        return Optional.ofNullable(snapshot().values().get(CONF_KEY_ARCHIVE_AGE)).orElse(CONF_VALUE_ARCHIVE_AGE);
+    }
+
+    /**
+     * @return how durable `notes add` is once it returns (see {@link NoteAppender.Fsync}) - `none` unless configured otherwise
+     * @throws IllegalStateException if the configured policy is unknown
+     */
+    public NoteAppender.Fsync getFsyncPolicy() {
+        String policy = Optional.ofNullable(snapshot().values().get(CONF_KEY_FSYNC)).orElse(CONF_VALUE_FSYNC);
+        try {
+            return NoteAppender.Fsync.of(policy);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(CONF_KEY_FSYNC + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return how `notes render` publishes the images into the docset (see {@link AssetPublisher.Mode}) - `copy`
+     * unless configured otherwise
+     * @throws IllegalStateException if the configured mode is unknown
+     */
+    public AssetPublisher.Mode getAssetMode() {
+        String mode = Optional.ofNullable(snapshot().values().get(CONF_KEY_ASSET_MODE)).orElse(CONF_VALUE_ASSET_MODE);
+        try {
+            return AssetPublisher.Mode.of(mode);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(CONF_KEY_ASSET_MODE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the unix-domain-socket a `notes daemon` listens on (defaults to a socket next to the config-file)
+     */
+    public Path getDaemonSocketPath() {
+        return Optional.ofNullable(snapshot().values().get(CONF_KEY_DAEMON_SOCKET))
+                .map(Paths::get)
+                .orElse(Paths.get(CONFIG_DIR, CONF_VALUE_DAEMON_SOCKET));
     }
 
     /**
@@ -81,12 +181,18 @@ public class Config {
      * </p>
      * Notice: The given filename does _not_ contain the file-suffix
      * </p>
+     * The location depends on the configured layout (see {@link #getNotesLayout()}) - unless the note already
+     * exists in the other one (i.e. it wasn't migrated yet).
+     * </p>
      * @param fileName of the file whose document-{@link Path} should be created
      * @return {@link Path} of the notes-file
      */
     public Path getNotesFilePath(String fileName) {
-        var notesDirectory = readConfigValue(CONF_KEY_NOTES_DOC_DIR);
-        return Paths.get(notesDirectory, (fileName.matches(".*(.md|.MD)$")) ? fileName : fileName + ".md");
+        String name = (fileName.matches(".*(.md|.MD)$")) ? fileName : fileName + ".md";
+        NoteFiles.Layout layout = getNotesLayout();
+        Path preferred = layout.resolve(getDocumentPath(), name);
+        Path other = (layout == NoteFiles.Layout.FLAT ? NoteFiles.Layout.SHARDED : NoteFiles.Layout.FLAT).resolve(getDocumentPath(), name);
+        return Files.notExists(preferred) && Files.exists(other) ? other : preferred;
     }
 
     /**
@@ -94,7 +200,7 @@ public class Config {
      * @return {@link Path} of the todo-file
      */
     public Path getTodoFilePath() {
-        return Paths.get(readConfigValue(CONF_KEY_NOTES_DOC_DIR), readConfigValue(CONF_KEY_TODO_FILE_NAME));
+        return require(snapshot().todoFilePath(), CONF_KEY_TODO_FILE_NAME);
     }
 
     public void reset() throws IOException {
@@ -121,21 +227,42 @@ public class Config {
                 .forEach(System.out::println);
     }
 
-    private String readConfigValue(String confKeyNotesDocDir) {
-        List<String> lines = null;
-        try {
-            lines = Files.readAllLines(Paths.get(CONFIG_FILE));
-        } catch (IOException e) {
-            System.err.println("Couldn't read config-file content: " + CONFIG_FILE);
-            lines = List.of();
-        }
+    /**
+     * @return the effective configuration (config-file and overrides) - the daemon's socket isn't part of it, since
+     * it doesn't affect what a command does
+     */
+    public Map<String, String> getEffectiveValues() {
+        Map<String, String> values = new HashMap<>(snapshot().values());
+        values.remove(CONF_KEY_DAEMON_SOCKET);
+        return values;
+    }
+
+    /**
+     * @param key of the config-value to be read (i.e. {@code NOTES_DOC_DIR})
+     * @return the value as resolved by the current {@link Snapshot} (including overrides)
+     * @throws IllegalStateException if the value isn't configured at all
+     */
+    public String readConfigValue(String key) {
+        return snapshot().value(key);
+    }
 
-        return lines.stream()
-                .map(line -> line.split("="))
-                .filter(parts -> parts[0].startsWith(confKeyNotesDocDir))
-                .map(parts -> parts[1])
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Cannot read '" + confKeyNotesDocDir + "' in configuration"));
+    private Path require(Path path, String key) {
+        return Objects.requireNonNullElseGet(path, () -> Paths.get(readConfigValue(key)));   // throws if not configured
+    }
+
+    private Snapshot snapshot() {
+        FileState state = FileState.of(Paths.get(CONFIG_FILE));
+        Snapshot current = snapshot;
+        if (current == null || !current.state().equals(state)) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || !current.state().equals(state)) {
+                    current = Snapshot.read(Paths.get(CONFIG_FILE), state);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
     }
 
     private void createConfigIfNecessary() throws IOException {
@@ -153,4 +280,63 @@ public class Config {
             }
         }
     }
+
+    /**
+     * Modification-time and size of the config-file - used to detect whether the config has to be re-read
+     * (both are {@code null} if there is no config-file).
+     */
+    private record FileState(FileTime modified, Long size) {
+        static FileState of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileState(attributes.lastModifiedTime(), attributes.size());
+            } catch (IOException e) {
+                return new FileState(null, null);
+            }
+        }
+    }
+
+    /**
+     * Immutable, fully resolved view on the configuration at a certain point in time - the {@link Path}s are
+     * resolved once, so every caller gets the very same instances.
+     */
+    private record Snapshot(FileState state, Map<String, String> values,
+                            Path documentPath, Path staticContentPath, Path documentOutputPath, Path todoFilePath) {
+
+        static Snapshot read(Path configFile, FileState state) {
+            Map<String, String> values = new HashMap<>();
+            try {
+                for (String line : Files.readAllLines(configFile)) {
+                    int separator = line.indexOf('=');        // only the first '=' separates key and value
+                    if (line.isBlank() || line.trim().startsWith("#") || separator < 0) {
+                        continue;
+                    }
+                    values.putIfAbsent(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+                }
+            } catch (IOException e) {
+                System.err.println("Couldn't read config-file content: " + configFile);
+            }
+
+            for (String key : KNOWN_KEYS) {
+                Optional.ofNullable(System.getenv(key)).ifPresent(value -> values.put(key, value));
+                Optional.ofNullable(System.getProperty(key.toLowerCase().replace('_', '.'))).ifPresent(value -> values.put(key, value));
+            }
+
+            Path documentPath = pathOf(values, CONF_KEY_NOTES_DOC_DIR);
+            return new Snapshot(state, Map.copyOf(values),
+                    documentPath,
+                    Optional.ofNullable(documentPath).map(p -> p.resolve("img")).orElse(null),
+                    pathOf(values, CONF_KEY_NOTES_OUTPUT_DIR),
+                    Optional.ofNullable(documentPath).flatMap(p -> Optional.ofNullable(values.get(CONF_KEY_TODO_FILE_NAME)).map(p::resolve)).orElse(null));
+        }
+
+        private static Path pathOf(Map<String, String> values, String key) {
+            return Optional.ofNullable(values.get(key)).map(Paths::get).orElse(null);
+        }
+
+        String value(String key) {
+            return Optional.ofNullable(values.get(key))
+                    .orElseThrow(() -> new IllegalStateException("Cannot read '" + key + "' in configuration"));
+        }
+    }
 }
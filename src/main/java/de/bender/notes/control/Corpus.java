@@ -0,0 +1,307 @@
+package de.bender.notes.control;
+
+import org.commonmark.node.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory model of all notes in the documents-dir - built within one single scan so that every note is read and
+ * parsed (at most) once per render. Notes that didn't change since the last render (according to the given
+ * {@link RenderManifest}) aren't read at all - their metadata is taken from the manifest instead.
+ */
+public class Corpus {
+
+    private static final int SCAN_AHEAD = 64;
+
+    private final List<Note> notes;
+    private final List<RenderManifest.Entry> removed;
+    private final List<String> failures;
+
+    private Corpus(List<Note> notes, List<RenderManifest.Entry> removed, List<String> failures) {
+        this.notes = notes;
+        this.removed = removed;
+        this.failures = failures;
+    }
+
+    /**
+     * Scans the given directory (in any of its layouts, see {@link NoteFiles}) for markdown-files - reading and parsing of added/changed notes is distributed
+     * among the given workers. A note that cannot be read or parsed is reported and left out of the corpus.
+     *
+     * @param documentPath the directory containing the notes
+     * @param manifest     describing the state of the last render (an empty one if everything should be parsed)
+     * @param markdown     used to parse the notes
+     * @param workers      to be used for reading/parsing
+     */
+    public static Corpus scan(Path documentPath, RenderManifest manifest, MarkdownService markdown, ExecutorService workers)
+            throws IOException, InterruptedException {
+        return scan(documentPath, manifest, markdown, workers, Metrics.disabled());
+    }
+
+    /**
+     * Same as {@link #scan(Path, RenderManifest, MarkdownService, ExecutorService)} - reporting the notes read and
+     * the time spent per note to the given metrics.
+     */
+    public static Corpus scan(Path documentPath, RenderManifest manifest, MarkdownService markdown, ExecutorService workers,
+                              Metrics metrics) throws IOException, InterruptedException {
+        return scan(documentPath, Period.ALL, manifest, markdown, workers, metrics);
+    }
+
+    /**
+     * Same as {@link #scan(Path, RenderManifest, MarkdownService, ExecutorService, Metrics)} - but only the notes
+     * within the given period are looked at. All notes of the manifest outside of it are taken over as they are
+     * (unchanged) - so with an empty manifest the corpus consists of the period's notes only.
+     */
+    public static Corpus scan(Path documentPath, Period period, RenderManifest manifest, MarkdownService markdown,
+                              ExecutorService workers, Metrics metrics) throws IOException, InterruptedException {
+        return scan(documentPath, period, manifest, markdown, workers, metrics, null);
+    }
+
+    /**
+     * Same as {@link #scan(Path, Period, RenderManifest, MarkdownService, ExecutorService, Metrics)} - but every
+     * note is handed to the given listener as soon as it (and all notes before it) got scanned. So following stages
+     * (like rendering) can start while the scan is still running.
+     * <p/>
+     * Only the listener gets to see the parsed documents - the corpus just keeps the metadata of the notes (so the
+     * documents of a big render don't pile up in memory).
+     *
+     * @param listener called (on the calling thread) for every note - in order of their names
+     */
+    public static Corpus scan(Path documentPath, Period period, RenderManifest manifest, MarkdownService markdown,
+                              ExecutorService workers, Metrics metrics, Listener listener) throws IOException, InterruptedException {
+        List<Path> markdownFiles;
+        try (Stream<Path> paths = NoteFiles.stream(documentPath, period)) {
+            markdownFiles = paths.toList();
+        }
+        List<Note> outside = !period.isBounded() ? List.of() : manifest.entries().stream()
+                .filter(e -> !NoteFiles.isWithin(period, e.source()))
+                .map(e -> new Note(e, Status.UNCHANGED, null))
+                .sorted(Comparator.comparing(Note::name))
+                .toList();
+
+        // only a limited number of notes is read ahead - so workers aren't flooded before anybody consumes a note
+        List<Future<Note>> tasks = new ArrayList<>();
+        for (Path filePath : markdownFiles.subList(0, Math.min(SCAN_AHEAD, markdownFiles.size()))) {
+            tasks.add(workers.submit((Callable<Note>) () -> scan(filePath, manifest, markdown, metrics)));
+        }
+
+        List<Note> notes = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        int nextOutside = 0;
+        for (int i = 0; i < markdownFiles.size(); i++) {
+            if (tasks.size() < markdownFiles.size()) {
+                Path filePath = markdownFiles.get(tasks.size());
+                tasks.add(workers.submit((Callable<Note>) () -> scan(filePath, manifest, markdown, metrics)));
+            }
+            Note note;
+            try {
+                note = tasks.get(i).get();
+            } catch (ExecutionException e) {
+                String source = markdownFiles.get(i).getFileName().toString();
+                System.err.printf("Couldn't read '%s': %s%n", source, rootCauseOf(e));
+                failures.add(source);
+                continue;
+            } finally {
+                tasks.set(i, null);                 // the corpus only keeps what it needs
+            }
+            while (nextOutside < outside.size() && outside.get(nextOutside).name().compareTo(note.name()) < 0) {
+                notes.add(publish(outside.get(nextOutside++), listener));
+            }
+            notes.add(publish(note, listener));
+        }
+        while (nextOutside < outside.size()) {
+            notes.add(publish(outside.get(nextOutside++), listener));
+        }
+
+        Set<String> existing = new HashSet<>(failures);   // a broken note wasn't removed - so keep its output
+        notes.forEach(n -> existing.add(n.name()));
+        List<RenderManifest.Entry> removed = manifest.entries().stream()
+                .filter(e -> NoteFiles.isWithin(period, e.source()))
+                .filter(e -> !existing.contains(e.source()))
+                .toList();
+
+        return new Corpus(notes, removed, failures);
+    }
+
+    private static Note publish(Note note, Listener listener) throws IOException, InterruptedException {
+        if (listener == null) {
+            return note;
+        }
+        listener.scanned(note);
+        return new Note(note.entry(), note.status(), null);
+    }
+
+    /*
+     * A note whose size and modification-time is unchanged is considered as unchanged without reading it at all.
+     * Otherwise, its content-hash decides (so a simple `touch` doesn't cause a re-render).
+     */
+    private static Note scan(Path filePath, RenderManifest manifest, MarkdownService markdown, Metrics metrics) throws IOException {
+        String source = filePath.getFileName().toString();
+        metrics.count("notes.scanned", 1);
+        NoteFiles.Stat stat = NoteFiles.stat(filePath).orElseThrow(() -> new NoSuchFileException(filePath.toString()));
+        long modified = stat.modified();
+        long size = stat.size();
+
+        Optional<RenderManifest.Entry> previous = manifest.get(source);
+        if (previous.filter(e -> e.modified() == modified && e.size() == size).isPresent()) {
+            return new Note(previous.get(), Status.UNCHANGED, null);
+        }
+
+        long start = metrics.start();
+        byte[] content = NoteFiles.read(filePath);
+        metrics.count("notes.read", 1);
+        metrics.count("bytes.read", content.length);
+        String hash = RenderManifest.hash(content);
+        if (previous.filter(e -> e.hash().equals(hash)).isPresent()) {
+            // content is the same - just remember the new timestamp
+            return new Note(new RenderManifest.Entry(source, hash, modified, size, previous.get().output(), previous.get().headlines()),
+                    Status.UNCHANGED, null);
+        }
+
+        RenderEvents.Parse event = new RenderEvents.Parse();
+        event.begin();
+        Node document;      // decoded while parsing (strictly, as before) - the note never exists as one big string
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8.newDecoder())) {
+            document = markdown.parse(reader);
+        }
+        if (event.shouldCommit()) {
+            event.note = source;
+            event.bytes = content.length;
+            event.commit();
+        }
+        metrics.count("notes.parsed", 1);
+        metrics.note(source, start);
+        return new Note(new RenderManifest.Entry(source, hash, modified, size, source + ".html", markdown.headlinesOf(document)),
+                previous.isPresent() ? Status.CHANGED : Status.ADDED,
+                document);
+    }
+
+    private static Throwable rootCauseOf(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * @return all (readable) notes - sorted by name
+     */
+    public List<Note> notes() {
+        return notes;
+    }
+
+    /**
+     * @return all notes that were added or changed since the last render (and thus have to be rendered)
+     */
+    public List<Note> changed() {
+        return notes.stream().filter(n -> n.status() != Status.UNCHANGED).toList();
+    }
+
+    /**
+     * @return manifest-entries of notes that were rendered before but don't exist anymore
+     */
+    public List<RenderManifest.Entry> removed() {
+        return removed;
+    }
+
+    /**
+     * @return names of those notes that couldn't be read or parsed
+     */
+    public List<String> failures() {
+        return failures;
+    }
+
+    /**
+     * @return whether notes were added or removed since the last render
+     */
+    public boolean structureChanged() {
+        return !removed.isEmpty() || notes.stream().anyMatch(n -> n.status() == Status.ADDED);
+    }
+
+    /**
+     * @return whether any note was added, changed or removed since the last render
+     */
+    public boolean contentChanged() {
+        return !removed.isEmpty() || notes.stream().anyMatch(n -> n.status() != Status.UNCHANGED);
+    }
+
+    /**
+     * @return the given notes grouped by month - months as well as the notes within a month are sorted in
+     * reverse order (so the most recent ones come first)
+     */
+    public static TreeMap<String, List<Note>> byMonth(List<Note> notes) {
+        return notes.stream()
+                .sorted(Comparator.comparing(Note::name).reversed())
+                .collect(Collectors.groupingBy(Note::month, () -> new TreeMap<>(Comparator.reverseOrder()), Collectors.toList()));
+    }
+
+    /**
+     * @return the month-key (i.e. '2022-09') for a note named after a date - otherwise the name's prefix
+     */
+    public static String monthOf(String noteName) {
+        return noteName.length() > 7 ? noteName.substring(0, 7) : noteName;
+    }
+
+    public enum Status {ADDED, CHANGED, UNCHANGED}
+
+    /**
+     * Gets to know the notes of a running scan - see {@link #scan(Path, Period, RenderManifest, MarkdownService, ExecutorService, Metrics, Listener)}
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void scanned(Note note) throws IOException, InterruptedException;
+    }
+
+    /**
+     * @param entry    metadata of the note (as it will be remembered in the {@link RenderManifest})
+     * @param status   of the note compared to the last render
+     * @param document the parsed note - only available for added or changed notes ({@code null} otherwise)
+     */
+    public record Note(RenderManifest.Entry entry, Status status, Node document) {
+
+        public String name() {
+            return entry.source();
+        }
+
+        /**
+         * @return the month-key (i.e. '2022-09') for notes named after a date - otherwise the name's prefix
+         */
+        public String month() {
+            return monthOf(name());
+        }
+
+        public String output() {
+            return entry.output();
+        }
+
+        public List<Headline> headlines() {
+            return entry.headlines();
+        }
+
+        /**
+         * @return only the top-level headings (H1) of this note
+         */
+        public List<String> topLevelHeadlines() {
+            return entry.headlines().stream().filter(Headline::isTopLevel).map(Headline::text).toList();
+        }
+    }
+}
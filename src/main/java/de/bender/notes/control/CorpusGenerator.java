@@ -0,0 +1,195 @@
+package de.bender.notes.control;
+
+import io.quarkus.qute.Template;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic notes-dir that is shaped like a real one - a `yyyy-MM-dd.md` file per day (written through
+ * the same template as `notes add`), each consisting of several timestamped entries with headlines, paragraphs,
+ * task-lists, tables, code-blocks and images (stored in `img/`) plus a todo-file.
+ * <p/>
+ * Generation is deterministic - the same {@link Shape} (including the seed) always results in the very same
+ * content, so benchmarks and scale-tests can be reproduced anywhere.
+ */
+public class CorpusGenerator {
+
+    private static final List<String> WORDS = List.of(
+            "docker", "kubernetes", "meeting", "think", "release", "java", "quarkus", "native", "image", "build",
+            "deploy", "review", "architecture", "database", "index", "search", "render", "notes", "über", "Ärger",
+            "performance", "latency", "throughput", "cache", "memory", "thread", "lock", "queue", "stream", "file",
+            "team", "customer", "incident", "migration", "backlog", "sprint", "api", "gateway", "token", "schema",
+            "the", "a", "and", "of", "to", "in", "is", "that", "with", "for", "on", "we", "it", "as", "be", "this");
+
+    // smallest possible (1x1, transparent) PNG - the content of images doesn't matter, only their number and names
+    private static final byte[] IMAGE = Base64.getDecoder()
+            .decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAAC0lEQVR4nGNgAAIAAAUAAXpeqz8AAAAASUVORK5CYII=");
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");     // same as `notes add`
+
+    private static final double TASK_LIST_RATIO = 0.2;
+    private static final double TABLE_RATIO = 0.1;
+    private static final double CODE_RATIO = 0.1;
+    private static final double SUB_HEADLINE_RATIO = 0.3;
+    private static final double DONE_TODO_RATIO = 0.25;
+
+    private final Template note;
+    private final Shape shape;
+
+    /**
+     * @param note  the template new entries are rendered with (see {@code note.txt})
+     * @param shape of the corpus to be generated
+     */
+    public CorpusGenerator(Template note, Shape shape) {
+        this.note = note;
+        this.shape = shape;
+    }
+
+    /**
+     * Writes the corpus into the given directory (which is created if necessary) - existing files of the same name
+     * are overwritten.
+     *
+     * @param documentPath the notes-dir to be populated
+     * @param todoFileName name of the todo-file within the notes-dir
+     * @return what was generated
+     */
+    public Summary generate(Path documentPath, String todoFileName) throws IOException {
+        return generate(documentPath, todoFileName, NoteFiles.Layout.FLAT);
+    }
+
+    /**
+     * Same as {@link #generate(Path, String)} - with the notes placed according to the given layout
+     */
+    public Summary generate(Path documentPath, String todoFileName, NoteFiles.Layout layout) throws IOException {
+        Random random = new Random(shape.seed());
+        Path imagePath = Files.createDirectories(documentPath.resolve("img"));
+
+        int notes = 0;
+        int entries = 0;
+        int images = 0;
+        long bytes = 0;
+        LocalDate day = shape.start();
+        for (int d = 0; (shape.days() <= 0 || d < shape.days()) && (shape.notes() <= 0 || notes < shape.notes()); d++, day = day.plusDays(1)) {
+            if (random.nextDouble() < shape.gapRatio()) {
+                continue;                           // nobody takes notes every single day
+            }
+
+            StringBuilder content = new StringBuilder();
+            LocalTime time = LocalTime.of(7, 0);
+            int entriesOfDay = 1 + random.nextInt(Math.max(1, shape.entriesPerDay()));
+            for (int e = 0; e < entriesOfDay; e++) {
+                time = time.plusSeconds(60 + random.nextInt(90 * 60));
+                StringBuilder body = new StringBuilder();
+                int wordsOfEntry = Math.max(1, shape.bodyWords() / 2 + random.nextInt(Math.max(1, shape.bodyWords())));
+                for (int written = 0; written < wordsOfEntry; ) {
+                    int paragraph = Math.min(wordsOfEntry - written, 15 + random.nextInt(50));
+                    body.append(sentence(random, paragraph)).append("\n\n");
+                    written += paragraph;
+                }
+                if (random.nextDouble() < SUB_HEADLINE_RATIO) {
+                    body.append("## ").append(headline(random)).append("\n\n").append(sentence(random, 10 + random.nextInt(20))).append("\n\n");
+                }
+                if (random.nextDouble() < TASK_LIST_RATIO) {
+                    for (int t = 1 + random.nextInt(4); t > 0; t--) {
+                        body.append(random.nextBoolean() ? "- [x] " : "- [ ] ").append(sentence(random, 3 + random.nextInt(6))).append("\n");
+                    }
+                    body.append("\n");
+                }
+                if (random.nextDouble() < TABLE_RATIO) {
+                    body.append("| ").append(words(random, 1)).append(" | ").append(words(random, 1)).append(" |\n|---|---|\n");
+                    for (int r = 1 + random.nextInt(5); r > 0; r--) {
+                        body.append("| `").append(words(random, 1)).append("` | ").append(words(random, 2 + random.nextInt(4))).append(" |\n");
+                    }
+                    body.append("\n");
+                }
+                if (random.nextDouble() < CODE_RATIO) {
+                    body.append("```bash\n").append(words(random, 2)).append(" --").append(words(random, 1)).append("\n```\n\n");
+                }
+                if (random.nextDouble() < shape.imageRatio()) {
+                    String imageName = String.format("%s-%d.png", day, e);
+                    Files.write(imagePath.resolve(imageName), IMAGE);
+                    body.append("![").append(words(random, 2)).append("](./img/").append(imageName).append(")\n\n");
+                    images++;
+                }
+
+                content.append(note.instance()
+                        .data("timestamp", TIMESTAMP_FORMAT.format(time))
+                        .data("headline", headline(random))
+                        .data("body", body.toString().stripTrailing())
+                        .render())
+                        .append("\n");
+                entries++;
+            }
+
+            Path file = Files.createDirectories(layout.resolve(documentPath, day + ".md").getParent()).resolve(day + ".md");
+            byte[] encoded = content.toString().getBytes(StandardCharsets.UTF_8);
+            Files.write(file, encoded);
+            // as if the note was last touched with its last entry
+            Files.setLastModifiedTime(file, FileTime.from(day.atTime(time).atZone(ZoneId.systemDefault()).toInstant()));
+            bytes += encoded.length;
+            notes++;
+        }
+
+        StringBuilder todos = new StringBuilder();
+        for (int t = 0; t < shape.todos(); t++) {
+            todos.append(random.nextDouble() < DONE_TODO_RATIO ? TodoStore.DONE_PREFIX : TodoStore.OPEN_PREFIX)
+                    .append(" ").append(sentence(random, 3 + random.nextInt(8))).append("\n");
+        }
+        byte[] encodedTodos = todos.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(documentPath.resolve(todoFileName), encodedTodos);
+
+        return new Summary(notes, entries, images, bytes + encodedTodos.length);
+    }
+
+    private static String headline(Random random) {
+        String headline = words(random, 2 + random.nextInt(5));
+        return Character.toUpperCase(headline.charAt(0)) + headline.substring(1);
+    }
+
+    private static String sentence(Random random, int count) {
+        return headline(random) + " " + words(random, Math.max(1, count - 2)) + ".";
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            words.append(i == 0 ? "" : " ").append(WORDS.get(random.nextInt(WORDS.size())));
+        }
+        return words.toString();
+    }
+
+    /**
+     * @param seed          of the random-generator - same seed, same corpus
+     * @param start         date of the first note
+     * @param days          number of days the notes are spread across ({@code <= 0} for no limit)
+     * @param notes         max number of notes to be generated ({@code <= 0} for no limit)
+     * @param entriesPerDay max number of entries per note (at least one)
+     * @param bodyWords     average number of words of an entry's body
+     * @param imageRatio    probability of an entry to contain an image
+     * @param gapRatio      probability of a day without a note
+     * @param todos         number of entries of the todo-file
+     */
+    public record Shape(long seed, LocalDate start, int days, int notes, int entriesPerDay, int bodyWords,
+                        double imageRatio, double gapRatio, int todos) {
+    }
+
+    /**
+     * @param notes   number of generated notes
+     * @param entries number of generated entries (over all notes)
+     * @param images  number of generated images
+     * @param bytes   total size of all notes and the todo-file
+     */
+    public record Summary(int notes, int entries, int images, long bytes) {
+    }
+}
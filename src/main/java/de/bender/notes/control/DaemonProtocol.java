@@ -0,0 +1,232 @@
+package de.bender.notes.control;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+/**
+ * Wire-format spoken between the CLI and a resident `notes daemon` over a unix-domain-socket.
+ * <pre>
+ *   request  : documentPath, todoFilePath, configCount, (key, value)*, interactive, argCount, (arg)*
+ *   response : (type, length, payload)*                      - terminated by an EXIT- or REJECTED-frame
+ * </pre>
+ * Strings are written as (length, utf-8 bytes). Output of the command is streamed back as STDOUT-/STDERR-frames
+ * while the command is still running, the final EXIT-frame carries the exit-code (as payload of length 4). A daemon
+ * whose effective configuration differs from the client's one (i.e. another NOTES_FSYNC or NOTES_LAYOUT given as
+ * override) REJECTs the request, so the client executes it on its own.
+ */
+public class DaemonProtocol {
+
+    public static final byte STDOUT = 1;
+    public static final byte STDERR = 2;
+    public static final byte EXIT = 3;
+    public static final byte REJECTED = 4;
+
+    private static final int MAX_STRING_LENGTH = 1 << 20;
+    private static final int MAX_COUNT = 1 << 10;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * @param documentPath the notes-dir as configured for the caller (absolute - relative ones depend on the cwd)
+     * @param todoFilePath the todo-file as configured for the caller (absolute as well)
+     * @param config       the caller's effective configuration (see {@link Config#getEffectiveValues()})
+     * @param interactive  whether the caller's output is a terminal - the daemon's one never is
+     * @param args         the (unparsed) command-line arguments
+     */
+    public record Request(Path documentPath, Path todoFilePath, Map<String, String> config, boolean interactive, List<String> args) {
+
+        /**
+         * @return a request carrying the given configuration
+         */
+        public static Request of(Config config, boolean interactive, List<String> args) {
+            return new Request(config.getDocumentPath().toAbsolutePath(), config.getTodoFilePath().toAbsolutePath(),
+                    config.getEffectiveValues(), interactive, args);
+        }
+
+        /**
+         * @return true if the given request was made with the very same configuration as this one
+         */
+        public boolean isConfiguredLike(Request other) {
+            return documentPath.equals(other.documentPath) && todoFilePath.equals(other.todoFilePath) && config.equals(other.config);
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            writeString(out, documentPath.toString());
+            writeString(out, todoFilePath.toString());
+            out.writeInt(config.size());
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.writeBoolean(interactive);
+            out.writeInt(args.size());
+            for (String arg : args) {
+                writeString(out, arg);
+            }
+            out.flush();
+        }
+
+        public static Request readFrom(DataInputStream in) throws IOException {
+            Path documentPath = Path.of(readString(in));
+            Path todoFilePath = Path.of(readString(in));
+            int configCount = readCount(in);
+            Map<String, String> config = new HashMap<>();
+            for (int i = 0; i < configCount; i++) {
+                config.put(readString(in), readString(in));
+            }
+            boolean interactive = in.readBoolean();
+            int argCount = readCount(in);
+            List<String> args = new ArrayList<>(argCount);
+            for (int i = 0; i < argCount; i++) {
+                args.add(readString(in));
+            }
+            return new Request(documentPath, todoFilePath, config, interactive, args);
+        }
+    }
+
+    /**
+     * Sends the given request to the daemon listening on the given socket and copies its output to the given
+     * streams
+     *
+     * @return the exit-code of the command - or nothing if there's no daemon (or it rejected the request)
+     */
+    public static OptionalInt forward(Path socket, Request request, OutputStream stdout, OutputStream stderr) {
+        if (Files.notExists(socket)) {
+            return OptionalInt.empty();
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return OptionalInt.empty();     // stale socket-file - the daemon isn't running anymore
+        }
+
+        try (channel) {
+            request.writeTo(new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                switch (type) {
+                    case STDOUT -> stdout.write(payload);
+                    case STDERR -> stderr.write(payload);
+                    case EXIT -> {
+                        stdout.flush();
+                        stderr.flush();
+                        return OptionalInt.of(ByteBuffer.wrap(payload).getInt());
+                    }
+                    case REJECTED -> {
+                        return OptionalInt.empty();
+                    }
+                    default -> throw new IOException("unknown frame-type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            stderr(stderr, "The daemon closed the connection unexpectedly\n");
+            return OptionalInt.of(1);
+        } catch (IOException e) {
+            stderr(stderr, "Lost connection to the daemon: " + e.getMessage() + "\n");
+            return OptionalInt.of(1);
+        }
+    }
+
+    /**
+     * Writes a single frame - frames of concurrent writers never interleave
+     */
+    public static void writeFrame(DataOutputStream out, byte type, byte[] payload, int offset, int length) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(payload, offset, length);
+            out.flush();
+        }
+    }
+
+    public static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+        byte[] payload = ByteBuffer.allocate(Integer.BYTES).putInt(exitCode).array();
+        writeFrame(out, EXIT, payload, 0, payload.length);
+    }
+
+    public static void writeRejected(DataOutputStream out) throws IOException {
+        writeFrame(out, REJECTED, new byte[0], 0, 0);
+    }
+
+    /**
+     * Stream that wraps everything written to it into frames of the given type
+     */
+    public static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte type;
+
+        public FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeFrame(out, type, b, off, len);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("malformed request");
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("malformed request");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void stderr(OutputStream stderr, String message) {
+        try {
+            stderr.write(message.getBytes(StandardCharsets.UTF_8));
+            stderr.flush();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.bender.notes.control;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Writes the search-index ({@code docSet.dsidx}) of a docset - see https://kapeli.com/docsets#createsqlite
+ * <p/>
+ * The statements are fed to the {@code sqlite3} CLI via stdin (instead of passing them as arguments, which breaks
+ * once the argument-list exceeds ARG_MAX) - all within one single transaction and with properly escaped values.
+ * The index is built next to the target and only moved into place if sqlite3 succeeded, so a failure never leaves
+ * a broken index behind.
+ * <p/>
+ * Entries are either collected until {@link #write(Path)} - or, once the writer was {@link #open(Path)}ed, streamed
+ * to sqlite3 right away (so sqlite3 fills the index while the entries are still produced). Closing a writer that
+ * wasn't written discards the index.
+ */
+public class DocSetIndexWriter implements AutoCloseable {
+
+    public static final String TYPE_ENTRY = "Entry";
+    public static final String TYPE_SECTION = "Section";
+
+    private static final int ROWS_PER_INSERT = 500;
+
+    private final List<Row> rows = new ArrayList<>();
+    private int size;
+
+    private boolean opened;
+    private Process process;
+    private Writer stdin;
+    private Path temporary;
+    private IOException writeFailure;
+
+    /**
+     * Adds an entry for a whole note
+     *
+     * @param name shown in the docset-reader
+     * @param path of the rendered note (relative to the docset's documents-dir)
+     */
+    public DocSetIndexWriter addEntry(String name, String path) {
+        return add(new Row(name, TYPE_ENTRY, path));
+    }
+
+    /**
+     * Adds an entry for a headline within a note - pointing to the dash-anchor that precedes every rendered heading
+     * (see {@link MarkdownService.CustomHtmlRenderer})
+     *
+     * @param headline text of the heading
+     * @param path     of the rendered note containing the heading
+     */
+    public DocSetIndexWriter addSection(String headline, String path) {
+        return add(new Row(headline, TYPE_SECTION, path + "#" + MarkdownService.dashAnchorOf(headline)));
+    }
+
+    /**
+     * @return number of entries (notes and headlines) added so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether entries are streamed to sqlite3 already
+     */
+    public boolean isOpen() {
+        return opened;
+    }
+
+    /**
+     * Starts sqlite3 for (re-)creating the search-index at the given location - all entries added so far are handed
+     * over right away, all following ones as soon as they're added. If sqlite3 isn't available that's reported by
+     * {@link #write(Path)}.
+     */
+    public DocSetIndexWriter open(Path index) throws IOException {
+        if (isOpen()) {
+            return this;
+        }
+        opened = true;
+        temporary = index.resolveSibling(index.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        try {
+            process = new ProcessBuilder("sqlite3", "-bail", temporary.toString())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.PIPE)
+                    .start();
+        } catch (IOException e) {
+            writeFailure = e;
+            return this;
+        }
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        statement("BEGIN TRANSACTION;\n");
+        statement("CREATE TABLE searchIndex(id INTEGER PRIMARY KEY, name TEXT, type TEXT, path TEXT);\n");
+        statement("CREATE UNIQUE INDEX anchor ON searchIndex (name, type, path);\n");
+        for (int i = 0; i < rows.size(); i++) {
+            insert(i, rows.get(i));
+        }
+        rows.clear();
+        return this;
+    }
+
+    /**
+     * (Re-)creates the search-index at the given location - completes the index of an {@link #open(Path)}ed writer
+     *
+     * @throws IOException if sqlite3 isn't available or reports an error
+     */
+    public void write(Path index) throws IOException, InterruptedException {
+        open(index);
+        if (process == null) {
+            throw new IOException("Couldn't start sqlite3: " + writeFailure.getMessage());
+        }
+        if (size % ROWS_PER_INSERT != 0) {
+            statement(";\n");               // terminate the last (partial) insert
+        }
+        statement("COMMIT;\n");
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            writeFailure = writeFailure != null ? writeFailure : e;
+        }
+        String errors = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+        int exitCode = process.waitFor();
+        process = null;
+
+        if (exitCode != 0 || writeFailure != null) {
+            Files.deleteIfExists(temporary);
+            throw new IOException(String.format("sqlite3 failed (exit-code %d) to write '%s': %s",
+                    exitCode, index.getFileName(), errors.isEmpty() && writeFailure != null ? writeFailure.getMessage() : errors));
+        }
+        Files.move(temporary, index, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the index if it wasn't written (i.e. because rendering failed halfway)
+     */
+    @Override
+    public void close() throws IOException {
+        if (process != null) {
+            process.destroy();
+            process = null;
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private DocSetIndexWriter add(Row row) {
+        if (isOpen()) {
+            insert(size, row);
+        } else {
+            rows.add(row);
+        }
+        size++;
+        return this;
+    }
+
+    private void insert(int i, Row row) {
+        statement(i % ROWS_PER_INSERT == 0 ? "INSERT OR IGNORE INTO searchIndex(name, type, path) VALUES\n  " : ",\n  ");
+        statement("(" + literal(row.name()) + ", " + literal(row.type()) + ", " + literal(row.path()) + ")");
+        if (i % ROWS_PER_INSERT == ROWS_PER_INSERT - 1) {
+            statement(";\n");
+        }
+    }
+
+    /*
+     * Once sqlite3 bailed out everything else is dropped - its error-message (see #write) is more helpful than the
+     * broken pipe
+     */
+    private void statement(String statement) {
+        if (writeFailure != null) {
+            return;
+        }
+        try {
+            stdin.write(statement);
+        } catch (IOException e) {
+            writeFailure = e;
+        }
+    }
+
+    /*
+     * SQL string-literal - quotes are doubled and NUL-chars (which would terminate the value) are dropped
+     */
+    static String literal(String value) {
+        return "'" + value.replace("\u0000", "").replace("'", "''") + "'";
+    }
+
+    private record Row(String name, String type, String path) {
+    }
+}
@@ -0,0 +1,132 @@
+package de.bender.notes.control;
+
+import io.vertx.core.json.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the entries `notes add --stdin` ingests - in one of these {@link Format}s:
+ * <pre>
+ *   lines : one entry per line
+ *   nul   : NUL-terminated entries (i.e. `find -print0`-style) - the first line of an entry is its headline
+ *   json  : one JSON-object per line - {"text": "...", "timestamp": "2022-09-12T10:15:00", "file": "meetings"}
+ * </pre>
+ * Only `text` is mandatory for JSON-lines - `timestamp` (ISO-8601, either local or with offset) defaults to the time
+ * of reading and `file` to the note of the timestamp's day.
+ */
+public class EntryReader {
+
+    public enum Format {
+        LINES, NUL, JSON;
+
+        /**
+         * @throws IllegalArgumentException if the given format is unknown
+         */
+        public static Format of(String format) {
+            try {
+                return valueOf(format.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown input-format '" + format + "' (use 'lines', 'nul' or 'json')");
+            }
+        }
+    }
+
+    /**
+     * @param content   lines of the entry - the first one is the headline
+     * @param timestamp of the entry - null if it wasn't given
+     * @param fileName  of the note the entry belongs to - null if it wasn't given
+     */
+    public record Entry(List<String> content, Instant timestamp, String fileName) {
+    }
+
+    private final InputStream in;
+    private final Format format;
+    private int records;
+
+    public EntryReader(InputStream in, Format format) {
+        this.in = new BufferedInputStream(in, 64 * 1024);
+        this.format = format;
+    }
+
+    /**
+     * Reads the next (non-blank) entry - a malformed entry is skipped, so reading can simply go on afterwards
+     *
+     * @return the next entry - null once the input is exhausted
+     * @throws IllegalArgumentException if the entry is malformed (the message names the entry)
+     */
+    public Entry next() throws IOException {
+        String record;
+        do {
+            record = readRecord();
+            if (record == null) {
+                return null;
+            }
+        } while (record.isBlank());
+        return format == Format.JSON ? parse(record) : new Entry(lines(record), null, null);
+    }
+
+    /**
+     * @return whether reading the next entry would block (or the input is exhausted) - the moment to write
+     * everything read so far
+     */
+    public boolean isDrained() throws IOException {
+        return in.available() == 0;
+    }
+
+    /*
+     * Splits records on bytes - so a multibyte UTF-8 character never gets torn apart
+     */
+    private String readRecord() throws IOException {
+        int delimiter = format == Format.NUL ? 0 : '\n';
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != delimiter) {
+            record.write(b);
+        }
+        if (b == -1 && record.size() == 0) {
+            return null;
+        }
+        records++;
+        return record.toString(StandardCharsets.UTF_8);
+    }
+
+    private Entry parse(String record) {
+        try {
+            JsonObject json = new JsonObject(record);
+            String text = json.getString("text");
+            if (text == null || text.isBlank()) {
+                throw new IllegalArgumentException("`text` is missing");
+            }
+            String fileName = json.getString("file");
+            if (fileName != null && (fileName.isBlank() || fileName.contains("/") || fileName.contains("\\"))) {
+                throw new IllegalArgumentException("`file` has to be a plain file-name");
+            }
+            String timestamp = json.getString("timestamp");
+            return new Entry(lines(text), timestamp != null ? parseTimestamp(timestamp) : null, fileName);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(String.format("Skipped entry %d: %s", records, e.getMessage()));
+        }
+    }
+
+    private static Instant parseTimestamp(String timestamp) {
+        try {
+            return Instant.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant();
+        }
+    }
+
+    private static List<String> lines(String text) {
+        return Arrays.stream(text.strip().split("\\R")).map(String::stripTrailing).toList();
+    }
+}
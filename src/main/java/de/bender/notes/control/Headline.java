@@ -0,0 +1,14 @@
+package de.bender.notes.control;
+
+/**
+ * A single heading of a note (i.e. {@code ## Meeting with Bob} results in level 2 and text "Meeting with Bob")
+ *
+ * @param level of the heading (1 for H1, 2 for H2 ...)
+ * @param text  the literal text of the heading (without any markdown markup)
+ */
+public record Headline(int level, String text) {
+
+    public boolean isTopLevel() {
+        return level == 1;
+    }
+}
@@ -0,0 +1,227 @@
+package de.bender.notes.control;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Persistent cache of the (ATX-)headlines of all notes - so listing the notes doesn't require to read every single
+ * one of them. The cache lives in a single binary file within the notes-dir (see {@link Config#getIndexPath()})
+ * that is memory-mapped when read (notes are identified by their path relative to the notes-dir). Its layout is
+ * <pre>
+ *   header : magic, version
+ *   notes  : count, (name, modified, size, headlineCount, (line, level, text)*)*
+ * </pre>
+ * The cache is refreshed lazily - only notes whose modification-time or size changed are read again; if nothing
+ * changed the cache file is left untouched. The headlines stay resident once loaded - as long as {@link NoteChanges}
+ * doesn't report any change the notes aren't looked at again at all.
+ */
+@ApplicationScoped
+public class HeadlineCache {
+
+    private static final int MAGIC = 0x4E48444C;          // "NHDL"
+    private static final int VERSION = 1;
+    private static final int MAX_HEADLINE_LENGTH = 1024;
+    private static final String CACHE_FILE_NAME = "headlines.idx";
+
+    @Inject
+    Config config;
+
+    @Inject
+    NoteChanges changes;
+
+    private List<CachedNote> resident;          // all cached notes (sorted by file-name) - null until loaded
+    private long validatedAt = -1;              // generation (see NoteChanges) the notes were last validated at
+    private Period validatedFor;
+
+    /**
+     * @return the headlines of all notes (sorted by name) - brought up-to-date before
+     */
+    public List<NoteHeadlines> headlines() throws IOException {
+        return headlines(Period.ALL);
+    }
+
+    /**
+     * Same as {@link #headlines()} - but only the notes within the given period are looked at (and returned). The
+     * cached headlines of all other notes are kept as they are.
+     */
+    public synchronized List<NoteHeadlines> headlines(Period period) throws IOException {
+        Path documentPath = config.getDocumentPath();
+        long generation = changes.generation();
+        if (resident == null || generation != validatedAt || !(validatedFor.equals(Period.ALL) || validatedFor.equals(period))) {
+            resident = validate(documentPath, period);
+            validatedAt = generation;
+            validatedFor = period;
+        }
+        return resident.stream()
+                .filter(n -> NoteFiles.isWithin(period, n.name()))
+                .map(n -> new NoteHeadlines(documentPath.resolve(n.name()), n.headlines()))
+                .toList();
+    }
+
+    /*
+     * @return all notes (sorted by file-name) - those within the given period brought up-to-date
+     */
+    private List<CachedNote> validate(Path documentPath, Period period) throws IOException {
+        Path cacheFile = config.getIndexPath().resolve(CACHE_FILE_NAME);
+
+        // a single stat per note - the attributes are all that's needed to validate the cache
+        Map<String, NoteFiles.Stat> markdownFiles = new LinkedHashMap<>();     // in order of the traversal (by name)
+        try (Stream<Path> paths = NoteFiles.stream(documentPath, period)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                NoteFiles.stat(path)            // empty if deleted since we listed the dir
+                        .ifPresent(stat -> markdownFiles.put(NoteFiles.nameOf(documentPath, path), stat));
+            }
+        }
+
+        Map<String, CachedNote> cached = new HashMap<>();
+        List<CachedNote> outside = new ArrayList<>();
+        for (CachedNote note : resident != null ? resident : read(cacheFile)) {     // the resident ones are as good
+            if (NoteFiles.isWithin(period, note.name())) {
+                cached.put(note.name(), note);
+            } else {
+                outside.add(note);
+            }
+        }
+
+        List<CachedNote> notes = new ArrayList<>(markdownFiles.size());
+        boolean changed = cached.size() != markdownFiles.size();
+        for (Map.Entry<String, NoteFiles.Stat> file : markdownFiles.entrySet()) {
+            String name = file.getKey();
+            long modified = file.getValue().modified();
+            long size = file.getValue().size();
+
+            CachedNote note = cached.get(name);
+            if (note == null || note.modified() != modified || note.size() != size) {
+                note = new CachedNote(name, modified, size, extract(documentPath.resolve(name)));
+                changed = true;
+            }
+            notes.add(note);
+        }
+
+        List<CachedNote> all = new ArrayList<>(outside);
+        all.addAll(notes);
+        all.sort(Comparator.comparing(n -> Path.of(n.name()).getFileName().toString()));
+        if (changed) {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmp = Files.createTempFile(cacheFile.getParent(), CACHE_FILE_NAME, ".tmp");
+            write(tmp, all);
+            Files.move(tmp, cacheFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        return all;
+    }
+
+    private static List<Entry> extract(Path file) throws IOException {
+        MappedNote note = MappedNote.map(file);
+        List<Entry> headlines = new ArrayList<>();
+        note.forEachLine((line, start, end) -> {
+            int level = note.headlineLevel(start, end);
+            if (level > 0) {
+                String text = note.decode(start + level + 1, end);
+                headlines.add(new Entry(line, new Headline(level, text.length() > MAX_HEADLINE_LENGTH ? text.substring(0, MAX_HEADLINE_LENGTH) : text)));
+            }
+            return true;
+        });
+        return headlines;
+    }
+
+    /*
+     * @return the cached notes - or none at all if the cache doesn't exist or cannot be read
+     */
+    private static List<CachedNote> read(Path cacheFile) {
+        if (Files.notExists(cacheFile)) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("unknown cache format");
+            }
+            int noteCount = buffer.getInt();
+            List<CachedNote> notes = new ArrayList<>(noteCount);
+            for (int i = 0; i < noteCount; i++) {
+                String name = readString(buffer);
+                long modified = buffer.getLong();
+                long size = buffer.getLong();
+                int headlineCount = buffer.getInt();
+                List<Entry> headlines = new ArrayList<>(headlineCount);
+                for (int h = 0; h < headlineCount; h++) {
+                    int line = buffer.getInt();
+                    int level = buffer.get();
+                    headlines.add(new Entry(line, new Headline(level, readString(buffer))));
+                }
+                notes.add(new CachedNote(name, modified, size, headlines));
+            }
+            return notes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Couldn't read headline-cache (it'll be re-created): " + cacheFile);
+            return List.of();
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void write(Path target, List<CachedNote> notes) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(notes.size());
+            for (CachedNote note : notes) {
+                writeString(out, note.name());
+                out.writeLong(note.modified());
+                out.writeLong(note.size());
+                out.writeInt(note.headlines().size());
+                for (Entry entry : note.headlines()) {
+                    out.writeInt(entry.line());
+                    out.writeByte(entry.headline().level());
+                    writeString(out, entry.headline().text());
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param file      the note
+     * @param headlines all headlines of the note - in order of appearance
+     */
+    public record NoteHeadlines(Path file, List<Entry> headlines) {
+    }
+
+    /**
+     * @param line     (zero-based) number of the line containing the headline
+     * @param headline level and (raw markdown) text of the headline
+     */
+    public record Entry(int line, Headline headline) {
+    }
+
+    private record CachedNote(String name, long modified, long size, List<Entry> headlines) {
+    }
+}
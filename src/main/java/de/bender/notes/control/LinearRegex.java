@@ -0,0 +1,510 @@
+package de.bender.notes.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Small, case-insensitive regular expression engine that is guaranteed to run in linear time - the pattern is
+ * compiled once into a Thompson-NFA which is simulated Pike-VM style (all alternatives are tracked in parallel, so
+ * there is no backtracking at all and pathological patterns like {@code (a*)*b} cannot explode).
+ * <p/>
+ * Notice: A single simulation tells whether a line matches, {@link #find(CharSequence)} restarts it after each match
+ * though - for patterns like {@code a*b|a} (every simulation runs to the end of the line just to report a single char)
+ * that would take quadratic time. So find only spends a fixed amount of work per char of the line and reports the
+ * matches found until then (it's meant for highlighting only).
+ * <p/>
+ * Supported syntax: literals, {@code .}, character classes ({@code [a-z]}, {@code [^0-9]}), the escapes
+ * {@code \d \w \s \D \W \S \b \B} (plus escaped meta-characters), groups ({@code (...)} and {@code (?:...)}),
+ * alternation {@code |}, the quantifiers {@code * + ? {n} {n,} {n,m}} (lazy variants are accepted but matched
+ * greedily) and the anchors {@code ^ $}. Features that require backtracking (back-references, look-arounds) are
+ * rejected.
+ */
+public class LinearRegex implements NeedleMatcher {
+
+    private static final int MAX_PROGRAM_SIZE = 10_000;
+    private static final int MAX_REPETITION = 1_000;
+    private static final int MAX_FIND_STEPS_PER_CHAR = 16;
+
+    private final List<Instruction> program;
+
+    public LinearRegex(String pattern) {
+        Node root = new Parser(pattern).parse();
+        List<Instruction> instructions = new ArrayList<>();
+        root.emit(instructions);
+        instructions.add(new Instruction(Op.MATCH, null, 0, 0));
+        this.program = List.copyOf(instructions);
+    }
+
+    @Override
+    public List<Span> find(CharSequence line) {
+        List<Span> spans = new ArrayList<>();
+        Budget budget = new Budget(MAX_FIND_STEPS_PER_CHAR * (line.length() + 1));
+        int from = 0;
+        while (from <= line.length()) {
+            Span span = search(line, from, false, budget);
+            if (span == null) {
+                break;
+            }
+            spans.add(span);
+            from = span.end() > span.start() ? span.end() : span.end() + 1;    // don't get stuck on empty matches
+        }
+        return spans.stream().filter(s -> s.end() > s.start()).toList();
+    }
+
+    @Override
+    public boolean matches(CharSequence line) {
+        return search(line, 0, true, new Budget(line.length() + 1)) != null;
+    }
+
+    /*
+     * Pike-VM: threads are kept in priority order (which yields leftmost-first semantics), new threads are only
+     * started as long as no match has been found. Every position taken costs one step of the given budget - once
+     * it's used up there's no match.
+     */
+    private Span search(CharSequence line, int from, boolean anyMatch, Budget budget) {
+        ThreadList current = new ThreadList(program.size());
+        ThreadList next = new ThreadList(program.size());
+        Span match = null;
+
+        for (int position = from; position <= line.length(); position++) {
+            if (!budget.take()) {
+                return null;
+            }
+            if (match == null) {
+                addThread(current, 0, position, line, position);
+            }
+            if (current.size == 0 && match != null) {
+                break;              // no thread can extend the match anymore
+            }
+
+            for (int i = 0; i < current.size; i++) {
+                int pc = current.pcs[i];
+                int start = current.starts[i];
+                Instruction instruction = program.get(pc);
+                if (instruction.op() == Op.CHAR) {
+                    if (position < line.length() && instruction.matches(line.charAt(position))) {
+                        addThread(next, pc + 1, start, line, position + 1);
+                    }
+                } else if (instruction.op() == Op.MATCH) {
+                    match = new Span(start, position);
+                    if (anyMatch) {
+                        return match;
+                    }
+                    break;              // threads with lower priority are cut off
+                }
+            }
+
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+            next.clear();
+        }
+        return match;
+    }
+
+    /*
+     * Follows all jumps, splits and assertions (iteratively, in priority order) and adds the resulting threads
+     */
+    private void addThread(ThreadList list, int entry, int start, CharSequence line, int position) {
+        int[] stack = new int[2 * program.size() + 2];
+        int top = 0;
+        stack[top++] = entry;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (list.contains(pc)) {
+                continue;
+            }
+            list.mark(pc);
+            Instruction instruction = program.get(pc);
+            switch (instruction.op()) {
+                case JUMP -> stack[top++] = instruction.x();
+                case SPLIT -> {
+                    stack[top++] = instruction.y();     // pushed first so `x` is followed first (higher priority)
+                    stack[top++] = instruction.x();
+                }
+                case ASSERT -> {
+                    if (instruction.matches(assertionContext(line, position))) {
+                        stack[top++] = pc + 1;
+                    }
+                }
+                default -> list.add(pc, start);
+            }
+        }
+    }
+
+    /*
+     * Encodes which assertions hold at the given position: bit 0 = line-start, bit 1 = line-end, bit 2 = word-boundary
+     */
+    private static int assertionContext(CharSequence line, int position) {
+        boolean wordBefore = position > 0 && isWordChar(line.charAt(position - 1));
+        boolean wordAfter = position < line.length() && isWordChar(line.charAt(position));
+        return (position == 0 ? 1 : 0) | (position == line.length() ? 2 : 0) | (wordBefore != wordAfter ? 4 : 0);
+    }
+
+    private static boolean isWordChar(int c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private enum Op {CHAR, SPLIT, JUMP, ASSERT, MATCH}
+
+    /*
+     * Number of positions the simulations of a single call may take
+     */
+    private static class Budget {
+        private int remaining;
+
+        Budget(int steps) {
+            this.remaining = steps;
+        }
+
+        boolean take() {
+            return remaining-- > 0;
+        }
+    }
+
+    /**
+     * @param op        what to do
+     * @param predicate for CHAR: the accepted chars, for ASSERT: the accepted assertion-context
+     * @param x         jump-target (for JUMP and the preferred branch of SPLIT)
+     * @param y         alternative jump-target of SPLIT
+     */
+    private record Instruction(Op op, IntPredicate predicate, int x, int y) {
+        boolean matches(int c) {
+            return predicate.test(c);
+        }
+    }
+
+    /*
+     * Sparse set of program-counters (with their match-start) - membership is checked in constant time and
+     * clearing is free, which keeps every step linear in the size of the program
+     */
+    private static class ThreadList {
+        final int[] pcs;
+        final int[] starts;
+        final int[] generation;
+        int size;
+        int currentGeneration = 1;
+
+        ThreadList(int capacity) {
+            this.pcs = new int[capacity];
+            this.starts = new int[capacity];
+            this.generation = new int[capacity];
+        }
+
+        boolean contains(int pc) {
+            return generation[pc] == currentGeneration;
+        }
+
+        void mark(int pc) {
+            generation[pc] = currentGeneration;
+        }
+
+        void add(int pc, int start) {
+            pcs[size] = pc;
+            starts[size] = start;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+            currentGeneration++;
+        }
+    }
+
+    // --- syntax tree -------------------------------------------------------------------------------------------------
+
+    private interface Node {
+        void emit(List<Instruction> program);
+    }
+
+    private static void add(List<Instruction> program, Instruction instruction) {
+        if (program.size() >= MAX_PROGRAM_SIZE) {
+            throw new IllegalArgumentException("Pattern is too complex (compiles to more than " + MAX_PROGRAM_SIZE + " instructions)");
+        }
+        program.add(instruction);
+    }
+
+    private record CharNode(IntPredicate predicate) implements Node {
+        public void emit(List<Instruction> program) {
+            add(program, new Instruction(Op.CHAR, predicate, 0, 0));
+        }
+    }
+
+    private record AssertNode(IntPredicate predicate) implements Node {
+        public void emit(List<Instruction> program) {
+            add(program, new Instruction(Op.ASSERT, predicate, 0, 0));
+        }
+    }
+
+    private record Sequence(List<Node> nodes) implements Node {
+        public void emit(List<Instruction> program) {
+            nodes.forEach(n -> n.emit(program));
+        }
+    }
+
+    private record Alternation(Node left, Node right) implements Node {
+        public void emit(List<Instruction> program) {
+            int split = program.size();
+            add(program, null);
+            left.emit(program);
+            int jump = program.size();
+            add(program, null);
+            int rightStart = program.size();
+            right.emit(program);
+            program.set(split, new Instruction(Op.SPLIT, null, split + 1, rightStart));
+            program.set(jump, new Instruction(Op.JUMP, null, program.size(), 0));
+        }
+    }
+
+    private record Star(Node node) implements Node {
+        public void emit(List<Instruction> program) {
+            int split = program.size();
+            add(program, null);
+            node.emit(program);
+            add(program, new Instruction(Op.JUMP, null, split, 0));
+            program.set(split, new Instruction(Op.SPLIT, null, split + 1, program.size()));
+        }
+    }
+
+    private record Plus(Node node) implements Node {
+        public void emit(List<Instruction> program) {
+            int start = program.size();
+            node.emit(program);
+            add(program, new Instruction(Op.SPLIT, null, start, program.size() + 1));
+        }
+    }
+
+    private record Maybe(Node node) implements Node {
+        public void emit(List<Instruction> program) {
+            int split = program.size();
+            add(program, null);
+            node.emit(program);
+            program.set(split, new Instruction(Op.SPLIT, null, split + 1, program.size()));
+        }
+    }
+
+    // --- parser ------------------------------------------------------------------------------------------------------
+
+    private static class Parser {
+        private final String pattern;
+        private int position;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Node parse() {
+            Node node = alternation();
+            if (position < pattern.length()) {
+                throw error("Unexpected '" + pattern.charAt(position) + "'");
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            Node node = sequence();
+            while (peek('|')) {
+                position++;
+                node = new Alternation(node, sequence());
+            }
+            return node;
+        }
+
+        private Node sequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (position < pattern.length() && !peek('|') && !peek(')')) {
+                nodes.add(repetition());
+            }
+            return new Sequence(nodes);
+        }
+
+        private Node repetition() {
+            Node atom = atom();
+            if (position >= pattern.length()) {
+                return atom;
+            }
+            Node node;
+            switch (pattern.charAt(position)) {
+                case '*' -> {
+                    position++;
+                    node = new Star(atom);
+                }
+                case '+' -> {
+                    position++;
+                    node = new Plus(atom);
+                }
+                case '?' -> {
+                    position++;
+                    node = new Maybe(atom);
+                }
+                case '{' -> node = bounded(atom);
+                default -> {
+                    return atom;
+                }
+            }
+            if (peek('?')) {
+                position++;                 // lazy quantifiers are matched greedily
+            }
+            if (peek('*') || peek('+') || peek('{')) {
+                throw error("Nested quantifier");
+            }
+            return node;
+        }
+
+        private Node bounded(Node atom) {
+            int close = pattern.indexOf('}', position);
+            if (close < 0) {
+                throw error("Unclosed repetition");
+            }
+            String[] bounds = pattern.substring(position + 1, close).split(",", -1);
+            try {
+                int min = Integer.parseInt(bounds[0].trim());
+                int max = bounds.length == 1 ? min : bounds[1].isBlank() ? -1 : Integer.parseInt(bounds[1].trim());
+                if (bounds.length > 2 || min > MAX_REPETITION || max > MAX_REPETITION || (max >= 0 && max < min)) {
+                    throw error("Invalid repetition");
+                }
+                position = close + 1;
+
+                List<Node> nodes = new ArrayList<>();
+                for (int i = 0; i < min; i++) {
+                    nodes.add(atom);
+                }
+                if (max < 0) {
+                    nodes.add(new Star(atom));
+                } else {
+                    for (int i = min; i < max; i++) {
+                        nodes.add(new Maybe(atom));
+                    }
+                }
+                return new Sequence(nodes);
+            } catch (NumberFormatException e) {
+                throw error("Invalid repetition");
+            }
+        }
+
+        private Node atom() {
+            char c = pattern.charAt(position++);
+            switch (c) {
+                case '(' -> {
+                    if (pattern.startsWith("?:", position)) {
+                        position += 2;
+                    } else if (peek('?')) {
+                        throw error("Look-arounds and other group-modifiers are not supported");
+                    }
+                    Node node = alternation();
+                    if (!peek(')')) {
+                        throw error("Unclosed group");
+                    }
+                    position++;
+                    return node;
+                }
+                case '[' -> {
+                    return new CharNode(characterClass());
+                }
+                case '.' -> {
+                    return new CharNode(ch -> true);
+                }
+                case '^' -> {
+                    return new AssertNode(context -> (context & 1) != 0);
+                }
+                case '$' -> {
+                    return new AssertNode(context -> (context & 2) != 0);
+                }
+                case '\\' -> {
+                    return escape();
+                }
+                case '*', '+', '?', '{' -> throw error("Dangling quantifier '" + c + "'");
+                case ')' -> throw error("Unbalanced ')'");
+                default -> {
+                    return new CharNode(caseInsensitive(ch -> ch == c));
+                }
+            }
+        }
+
+        private Node escape() {
+            if (position >= pattern.length()) {
+                throw error("Trailing backslash");
+            }
+            char c = pattern.charAt(position++);
+            if (c == 'b') {
+                return new AssertNode(context -> (context & 4) != 0);
+            }
+            if (c == 'B') {
+                return new AssertNode(context -> (context & 4) == 0);
+            }
+            if (Character.isDigit(c)) {
+                throw error("Back-references are not supported");
+            }
+            return new CharNode(escapedClass(c));
+        }
+
+        private IntPredicate escapedClass(char c) {
+            return switch (c) {
+                case 'd' -> Character::isDigit;
+                case 'D' -> ch -> !Character.isDigit(ch);
+                case 'w' -> LinearRegex::isWordChar;
+                case 'W' -> ch -> !isWordChar(ch);
+                case 's' -> Character::isWhitespace;
+                case 'S' -> ch -> !Character.isWhitespace(ch);
+                case 't' -> ch -> ch == '\t';
+                default -> {
+                    if (Character.isLetter(c)) {
+                        throw error("Unsupported escape '\\" + c + "'");
+                    }
+                    yield caseInsensitive(ch -> ch == c);
+                }
+            };
+        }
+
+        private IntPredicate characterClass() {
+            boolean negated = peek('^');
+            if (negated) {
+                position++;
+            }
+            IntPredicate predicate = ch -> false;
+            boolean first = true;
+            while (position < pattern.length() && (first || !peek(']'))) {
+                first = false;
+                char c = pattern.charAt(position++);
+                IntPredicate member;
+                if (c == '\\') {
+                    if (position >= pattern.length()) {
+                        throw error("Trailing backslash");
+                    }
+                    member = escapedClass(pattern.charAt(position++));
+                } else if (peek('-') && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+                    char to = pattern.charAt(position + 1);
+                    position += 2;
+                    if (to < c) {
+                        throw error("Invalid range " + c + "-" + to);
+                    }
+                    member = ch -> ch >= c && ch <= to;
+                } else {
+                    member = ch -> ch == c;
+                }
+                predicate = predicate.or(member);
+            }
+            if (!peek(']')) {
+                throw error("Unclosed character class");
+            }
+            position++;
+            IntPredicate members = caseInsensitive(predicate);
+            return negated ? members.negate() : members;
+        }
+
+        private static IntPredicate caseInsensitive(IntPredicate predicate) {
+            return ch -> predicate.test(ch)
+                    || predicate.test(Character.toLowerCase(ch))
+                    || predicate.test(Character.toUpperCase(ch));
+        }
+
+        private boolean peek(char c) {
+            return position < pattern.length() && pattern.charAt(position) == c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at index " + position + " in pattern '" + pattern + "'");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.bender.notes.control;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Read-only, memory-mapped view on the (UTF-8 encoded) content of a note. Lines, headline-prefixes and needles are
+ * located directly within the mapped bytes - only the lines a caller is actually interested in get decoded into
+ * {@code String}s, which keeps allocations (and GC-pressure) low when scanning lots of notes.
+ * <p/>
+ * Since every access is absolute (the buffer's position is never touched) an instance can be shared among threads.
+ */
+public class MappedNote {
+
+    private final Path file;
+    private final ByteBuffer content;
+
+    private MappedNote(Path file, ByteBuffer content) {
+        this.file = file;
+        this.content = content;
+    }
+
+    /**
+     * Maps the given note into memory - the mapping stays valid after this method returned (although the
+     * underlying channel is already closed) and is released once the instance gets garbage-collected. An archived
+     * note (see {@link NoteArchive}) is inflated onto the heap instead.
+     */
+    public static MappedNote map(Path file) throws IOException {
+        if (NoteArchive.isArchived(file)) {
+            return new MappedNote(file, ByteBuffer.wrap(NoteArchive.read(file)));
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return new MappedNote(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the raw bytes of the note - must only be accessed via absolute gets
+     */
+    public ByteBuffer bytes() {
+        return content;
+    }
+
+    public int size() {
+        return content.limit();
+    }
+
+    /**
+     * Hands the boundaries of every line to the given visitor (a trailing {@code \r} isn't considered part of the
+     * line) - until either all lines are visited or the visitor asks to stop.
+     */
+    public void forEachLine(LineVisitor visitor) {
+        int limit = content.limit();
+        int line = 0;
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && content.get(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && content.get(end - 1) == '\r') {
+                end--;
+            }
+            if (!visitor.visit(line++, start, end)) {
+                return;
+            }
+            start = next;
+        }
+    }
+
+    /**
+     * @return the end of the line starting at the given offset (excluding a trailing {@code \r})
+     */
+    public int lineEnd(int start) {
+        int end = start;
+        while (end < content.limit() && content.get(end) != '\n') {
+            end++;
+        }
+        return (end > start && content.get(end - 1) == '\r') ? end - 1 : end;
+    }
+
+    /**
+     * @return the level of the ATX-headline (i.e. 1 for {@code # Headline}) the given line represents - 0 if it's
+     * no headline at all
+     */
+    public int headlineLevel(int start, int end) {
+        int level = 0;
+        while (start + level < end && level < 6 && content.get(start + level) == '#') {
+            level++;
+        }
+        return (level > 0 && start + level < end && content.get(start + level) == ' ') ? level : 0;
+    }
+
+    /**
+     * @return the given region decoded as UTF-8 (malformed input is replaced)
+     */
+    public String decode(int start, int end) {
+        return StandardCharsets.UTF_8.decode(content.slice(start, end - start)).toString();
+    }
+
+    @FunctionalInterface
+    public interface LineVisitor {
+
+        /**
+         * @param line  (zero-based) number of the line
+         * @param start offset of the line's first byte
+         * @param end   offset after the line's last byte
+         * @return whether the next line should be visited
+         */
+        boolean visit(int line, int start, int end);
+    }
+}
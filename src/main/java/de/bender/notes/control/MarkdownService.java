@@ -0,0 +1,165 @@
+package de.bender.notes.control;
+
+import org.commonmark.Extension;
+import org.commonmark.ext.autolink.AutolinkExtension;
+import org.commonmark.ext.gfm.strikethrough.StrikethroughExtension;
+import org.commonmark.ext.gfm.tables.TablesExtension;
+import org.commonmark.ext.heading.anchor.HeadingAnchorExtension;
+import org.commonmark.ext.image.attributes.ImageAttributesExtension;
+import org.commonmark.ext.task.list.items.TaskListItemsExtension;
+import org.commonmark.node.AbstractVisitor;
+import org.commonmark.node.Heading;
+import org.commonmark.node.Image;
+import org.commonmark.node.Node;
+import org.commonmark.node.Text;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.NodeRenderer;
+import org.commonmark.renderer.html.CoreHtmlNodeRenderer;
+import org.commonmark.renderer.html.HtmlNodeRendererContext;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.commonmark.renderer.html.HtmlWriter;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Encapsulates the markdown-to-HTML pipeline (commonmark plus the extensions we use) - parser and renderer are
+ * immutable and thread-safe, hence they're created once and shared by everybody.
+ */
+@ApplicationScoped
+public class MarkdownService {
+
+    private static final List<Extension> markdownExtensions = List.of(
+            AutolinkExtension.create(),
+            StrikethroughExtension.create(),
+            HeadingAnchorExtension.create(),
+            ImageAttributesExtension.create(),
+            TaskListItemsExtension.create(),
+            TablesExtension.create()
+    );
+
+    private final Parser parser = Parser.builder()
+            .extensions(markdownExtensions)
+            .build();
+    private final HtmlRenderer htmlRenderer = HtmlRenderer.builder()
+            .extensions(markdownExtensions)
+            .percentEncodeUrls(true)
+            .nodeRendererFactory(CustomHtmlRenderer::new)
+            .build();
+
+    public Node parse(String markdown) {
+        return parser.parse(markdown);
+    }
+
+    /**
+     * Parses the markdown read from the given reader - without reading it into one big string first
+     */
+    public Node parse(Reader markdown) throws IOException {
+        return parser.parseReader(markdown);
+    }
+
+    public String render(Node document) {
+        return htmlRenderer.render(document);
+    }
+
+    /**
+     * Renders the given document right into the output - i.e. a buffered writer of the target-file, so the HTML never
+     * exists as a whole on the heap
+     */
+    public void render(Node document, Appendable output) throws IOException {
+        try {
+            htmlRenderer.render(document, output);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException io) {    // commonmark wraps the output's IOExceptions
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return all headings of the given document (in document order)
+     */
+    public List<Headline> headlinesOf(Node document) {
+        List<Headline> headlines = new ArrayList<>();
+        document.accept(new AbstractVisitor() {
+            @Override
+            public void visit(Heading heading) {
+                headlines.add(new Headline(heading.getLevel(), toLiteralText(heading)));
+            }
+        });
+        return headlines;
+    }
+
+    /**
+     * @return the name of the dash-anchor placed in front of the heading with the given text
+     */
+    public static String dashAnchorOf(String headline) {
+        return "//apple_ref/cpp/Entry/" + headline.replaceAll(" ", "%20");
+    }
+
+    /**
+     * I post-process image links so that I don't have to copy the originals around
+     */
+    public static class CustomHtmlRenderer extends CoreHtmlNodeRenderer implements NodeRenderer {
+
+        private final HtmlWriter html;
+
+        CustomHtmlRenderer(HtmlNodeRendererContext context) {
+            super(context);
+            this.html = context.getWriter();
+        }
+
+        @Override
+        public Set<Class<? extends Node>> getNodeTypes() {
+            return Set.of(Image.class, Heading.class);
+        }
+
+
+        @Override
+        public void render(Node node) {
+            if (Image.class.isAssignableFrom(node.getClass())) {
+                Image image = (Image) node;
+                html.tag("img",
+                        Map.of(
+                                "src", image.getDestination().replace("/img", ""),
+                                "alt", Optional.ofNullable(image.getTitle()).orElse("")
+                        ));
+            } else if (Heading.class.isAssignableFrom(node.getClass())) {
+                Heading heading = (Heading) node;
+                // before each heading we place a Dash-Anchor link to support a nice outline within Dash
+                // see https://kapeli.com/docsets#tableofcontents
+                this.html.tag("a", Map.of(
+                        "name", dashAnchorOf(toLiteralText(heading)),
+                        "class", "dashAnchor"
+                ));
+                this.html.tag("/a");
+                this.visit(heading);
+            }
+        }
+    }
+
+    /*
+     * In case of nexted elements for i.e. Headline this method recursively determines all _contained_
+     * Text-Nodes and renders their literal content concatenated.
+     */
+    static String toLiteralText(Node parent) {
+        Node next;
+        var titleBuffer = new StringBuilder();
+        for(Node node = parent.getFirstChild(); node != null; node = next) {
+            next = node.getNext();
+            if (node instanceof Text t) {
+                titleBuffer.append(t.getLiteral());
+            } else {
+                titleBuffer.append(toLiteralText(node));
+            }
+        }
+        return titleBuffer.toString();
+    }
+}
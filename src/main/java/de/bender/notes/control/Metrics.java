@@ -0,0 +1,149 @@
+package de.bender.notes.control;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.PrintStream;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics of a single command-execution - wall-time per phase, counters (like files or bytes read) and
+ * the time spent per note. Workers may report concurrently.
+ * <p/>
+ * Metrics are opt-in: the {@link #disabled()} instance ignores everything reported to it without even looking at
+ * the clock - so instrumented code doesn't have to care whether anybody is interested.
+ */
+public class Metrics {
+
+    private static final Metrics DISABLED = new Metrics(false);
+    private static final Phase NO_PHASE = () -> {};
+
+    private final boolean enabled;
+    private final Map<String, Long> phases = new LinkedHashMap<>();         // in order of appearance
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> notes = new ConcurrentHashMap<>();
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static Metrics enabled() {
+        return new Metrics(true);
+    }
+
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Measures the wall-time of a phase until the returned handle is closed (i.e. by try-with-resources) - a phase
+     * executed several times is summed up.
+     */
+    public Phase phase(String name) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+        long start = System.nanoTime();
+        return () -> {
+            long elapsed = System.nanoTime() - start;
+            synchronized (phases) {
+                phases.merge(name, elapsed, Long::sum);
+            }
+        };
+    }
+
+    public void count(String counter, long delta) {
+        if (enabled) {
+            counters.computeIfAbsent(counter, c -> new LongAdder()).add(delta);
+        }
+    }
+
+    /**
+     * @return the current time for a subsequent {@link #note(String, long)} - or 0 if disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Attributes the time since the given start (see {@link #start()}) to the given note - the time of several
+     * stages (i.e. parse and render) is summed up per note.
+     */
+    public void note(String note, long start) {
+        if (enabled) {
+            notes.computeIfAbsent(note, n -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Prints a human-readable report
+     *
+     * @param slowest number of notes that took the longest to be listed
+     */
+    public void print(PrintStream out, int slowest) {
+        out.println("Phases:");
+        phases().forEach((name, nanos) -> out.printf("  %-24s %8d ms%n", name, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        out.println("Counters:");
+        counters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(c -> out.printf("  %-24s %11d%n", c.getKey(), c.getValue().sum()));
+        if (slowest > 0 && !notes.isEmpty()) {
+            out.println("Slowest notes:");
+            slowest(slowest).forEach(n -> out.printf("  %-24s %8.2f ms%n", n.getKey(), n.getValue() / 1_000_000.0));
+        }
+    }
+
+    /**
+     * @param slowest number of notes that took the longest to be listed
+     * @return all metrics as JSON (times in milliseconds)
+     */
+    public String toJson(int slowest) {
+        JsonObject phasesJson = new JsonObject();
+        phases().forEach((name, nanos) -> phasesJson.put(name, nanos / 1_000_000.0));
+        JsonObject countersJson = new JsonObject();
+        counters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(c -> countersJson.put(c.getKey(), c.getValue().sum()));
+        JsonArray slowestJson = new JsonArray();
+        slowest(slowest).forEach(n -> slowestJson.add(new JsonObject().put("note", n.getKey()).put("ms", n.getValue() / 1_000_000.0)));
+
+        return new JsonObject()
+                .put("phases", phasesJson)
+                .put("counters", countersJson)
+                .put("slowest", slowestJson)
+                .encodePrettily();
+    }
+
+    private Map<String, Long> phases() {
+        synchronized (phases) {
+            return new LinkedHashMap<>(phases);
+        }
+    }
+
+    private List<Map.Entry<String, Long>> slowest(int limit) {
+        return notes.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+
+    /**
+     * Handle of a running phase - closing it ends the phase
+     */
+    @FunctionalInterface
+    public interface Phase extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,129 @@
+package de.bender.notes.control;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds needles within a single line of a note - all implementations are case-insensitive, compiled once and
+ * guaranteed to run in time linear to the length of the line (no matter what the needle looks like). To keep that
+ * promise {@link LinearRegex} may report fewer regions for pathological patterns.
+ */
+public interface NeedleMatcher {
+
+    /**
+     * @return the (non-overlapping) regions of the given line that match - in ascending order
+     */
+    List<Span> find(CharSequence line);
+
+    /**
+     * @return whether the given line contains at least one match
+     */
+    default boolean matches(CharSequence line) {
+        return !find(line).isEmpty();
+    }
+
+    /**
+     * @return whether the given region of UTF-8 encoded bytes contains at least one match - the region gets
+     * decoded unless the implementation is able to match on the raw bytes
+     */
+    default boolean matches(ByteBuffer utf8, int start, int end) {
+        return matches(StandardCharsets.UTF_8.decode(utf8.slice(start, end - start)));
+    }
+
+    /**
+     * @param needles literal strings of which any should match (OR-combined)
+     */
+    static NeedleMatcher literal(List<String> needles) {
+        return new LiteralMatcher(needles);
+    }
+
+    /**
+     * @param pattern regular expression (see {@link LinearRegex} for the supported syntax)
+     * @throws IllegalArgumentException if the pattern is malformed or uses unsupported features
+     */
+    static NeedleMatcher regex(String pattern) {
+        return new LinearRegex(pattern);
+    }
+
+    /**
+     * @param start index of the first char of the match
+     * @param end   index after the last char of the match
+     */
+    record Span(int start, int end) {
+    }
+
+    /**
+     * Aho-Corasick based matcher for a set of literal needles. If all needles are plain ASCII, a second automaton
+     * matches UTF-8 encoded lines without decoding them (ASCII-bytes never occur within multibyte-sequences, so
+     * folding the ASCII-letters is sufficient).
+     */
+    class LiteralMatcher implements NeedleMatcher {
+
+        private final AhoCorasick automaton;
+        private final AhoCorasick byteAutomaton;
+
+        LiteralMatcher(List<String> needles) {
+            this.automaton = new AhoCorasick(needles.stream()
+                    .map(needle -> needle.chars().map(LiteralMatcher::fold).toArray())
+                    .toList());
+            this.byteAutomaton = needles.stream().allMatch(n -> n.chars().allMatch(c -> c < 0x80))
+                    ? new AhoCorasick(needles.stream().map(n -> n.chars().map(LiteralMatcher::foldAscii).toArray()).toList())
+                    : null;
+        }
+
+        static int fold(int c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        static int foldAscii(int b) {
+            return (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
+        }
+
+        @Override
+        public List<Span> find(CharSequence line) {
+            List<Span> spans = new ArrayList<>();
+            int state = AhoCorasick.initialState();
+            for (int i = 0; i < line.length(); i++) {
+                state = automaton.step(state, fold(line.charAt(i)));
+                int length = automaton.longestMatch(state);
+                if (length > 0) {
+                    int start = i + 1 - length;
+                    if (!spans.isEmpty() && spans.get(spans.size() - 1).end() >= start) {   // overlapping matches are merged
+                        start = spans.remove(spans.size() - 1).start();
+                    }
+                    spans.add(new Span(start, i + 1));
+                }
+            }
+            return spans;
+        }
+
+        @Override
+        public boolean matches(CharSequence line) {
+            int state = AhoCorasick.initialState();
+            for (int i = 0; i < line.length(); i++) {
+                state = automaton.step(state, fold(line.charAt(i)));
+                if (automaton.longestMatch(state) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean matches(ByteBuffer utf8, int start, int end) {
+            if (byteAutomaton == null) {
+                return NeedleMatcher.super.matches(utf8, start, end);
+            }
+            int state = AhoCorasick.initialState();
+            for (int i = start; i < end; i++) {
+                state = byteAutomaton.step(state, foldAscii(utf8.get(i) & 0xFF));
+                if (byteAutomaton.longestMatch(state) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.bender.notes.control;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Appends entries to notes - every append holds an exclusive lock on the note (so concurrent `notes add`
+ * invocations, i.e. from hooks or scripts, never interleave) and writes the whole entry at once.
+ * <p/>
+ * Several entries for the same note (i.e. of `notes add --stdin`) are best handed over together - they're written
+ * with a single open, lock, write (and fsync) instead of one per entry.
+ * <p/>
+ * Appends to the todo-file additionally hold the lock of the {@link TodoStore} - it replaces the file when removing
+ * done todos, so a lock on the file itself doesn't guard against that.
+ */
+@ApplicationScoped
+public class NoteAppender {
+
+    /**
+     * How durable an append is once it returns
+     */
+    public enum Fsync {
+        /** leaves flushing to the OS (fastest - but the last entries might get lost on a power failure) */
+        NONE,
+        /** flushes the content (fdatasync) */
+        DATA,
+        /** flushes content and metadata (fsync) */
+        FULL;
+
+        /**
+         * @throws IllegalArgumentException if the given policy is unknown
+         */
+        public static Fsync of(String policy) {
+            try {
+                return valueOf(policy.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown fsync-policy '" + policy + "' (use 'none', 'data' or 'full')");
+            }
+        }
+    }
+
+    @Inject
+    TodoStore todoStore;
+
+    private final ReentrantLock writer = new ReentrantLock();
+
+    /**
+     * Appends the given entry to the note (which is created if necessary)
+     */
+    public void append(Path note, String entry, Fsync fsync) throws IOException {
+        append(note, List.of(entry), fsync);
+    }
+
+    /**
+     * Appends the given entries to the note (which is created if necessary) - all of them with a single write
+     */
+    public void append(Path note, List<String> entries, Fsync fsync) throws IOException {
+        byte[] content = String.join("", entries).getBytes(StandardCharsets.UTF_8);
+        writer.lock();
+        try {
+            if (todoStore.isTodoFile(note)) {
+                todoStore.whileLocked(() -> write(note, content, fsync));
+            } else {
+                write(note, content, fsync);
+            }
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /*
+     * The lock guards against other processes - within this one the writer-lock already serializes appends
+     * (FileChannel#lock would throw an OverlappingFileLockException otherwise)
+     */
+    private static void write(Path note, byte[] content, Fsync fsync) throws IOException {
+        try (FileChannel channel = FileChannel.open(note, CREATE, WRITE, APPEND);
+             FileLock ignored = channel.lock()) {
+            ByteBuffer bytes = ByteBuffer.wrap(content);
+            while (bytes.hasRemaining()) {      // a single call for regular files - the loop only guards partial writes
+                channel.write(bytes);
+            }
+            switch (fsync) {
+                case DATA -> channel.force(false);
+                case FULL -> channel.force(true);
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package de.bender.notes.control;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Cold storage for old notes - they're packed into one compressed segment per month within the notes-dir (i.e.
+ * `archive/2019-03.narc`). Every note is deflated on its own, so reading a single note only inflates that one. The
+ * layout of a segment is
+ * <pre>
+ *   header  : magic, version
+ *   entries : count, (name, modified, size, offset, length)*     - sorted by name, offsets relative to data
+ *   data    : the deflated notes
+ * </pre>
+ * Archived notes are addressed by virtual paths below their segment (i.e. `archive/2019-03.narc/2019-03-12.md`) -
+ * {@link NoteFiles} hands them out next to the regular notes, and {@link NoteFiles#read(Path)} as well as
+ * {@link MappedNote#map(Path)} read them transparently. A note keeps its modification-time and size when archived,
+ * so the DocSet doesn't consider it changed.
+ * <p/>
+ * Segments are never changed in place - they're re-written and replaced as a whole (atomically).
+ */
+public final class NoteArchive {
+
+    public static final String ARCHIVE_DIR_NAME = "archive";
+
+    private static final String SEGMENT_SUFFIX = ".narc";
+    private static final Pattern SEGMENT = Pattern.compile("(\\d{4})-(\\d{2})\\.narc");
+    private static final int MAGIC = 0x4E415243;          // "NARC"
+    private static final int VERSION = 1;
+
+    private NoteArchive() {
+    }
+
+    /**
+     * @return whether the given path addresses a note within a segment (see {@link NoteArchive})
+     */
+    public static boolean isArchived(Path note) {
+        Path segment = note.getParent();
+        return segment != null && segment.getFileName().toString().endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @param fileName of the note (i.e. `2019-03-12.md`)
+     * @return the (virtual) path of the note - if it is archived at all
+     */
+    public static Optional<Path> find(Path documentPath, String fileName) throws IOException {
+        Optional<Path> segment = segmentOf(documentPath, fileName);
+        if (segment.isEmpty() || Files.notExists(segment.get())) {
+            return Optional.empty();
+        }
+        return Segment.read(segment.get()).entry(fileName).map(e -> segment.get().resolve(fileName));
+    }
+
+    /**
+     * @return modification-time and size the given note had when it was archived - empty if it isn't archived (anymore)
+     */
+    public static Optional<NoteFiles.Stat> stat(Path note) throws IOException {
+        if (Files.notExists(note.getParent())) {
+            return Optional.empty();
+        }
+        return Segment.read(note.getParent()).entry(note.getFileName().toString())
+                .map(e -> new NoteFiles.Stat(e.modified(), e.size()));
+    }
+
+    /**
+     * @return the (inflated) content of the given archived note
+     */
+    public static byte[] read(Path note) throws IOException {
+        if (Files.notExists(note.getParent())) {
+            throw new NoSuchFileException(note.toString());
+        }
+        Segment segment = Segment.read(note.getParent());
+        Entry entry = segment.entry(note.getFileName().toString()).orElseThrow(() -> new NoSuchFileException(note.toString()));
+        return segment.inflate(entry);
+    }
+
+    /**
+     * @return all archived notes within the given period - sorted by file-name. Segments outside of the period
+     * aren't opened at all.
+     */
+    static Stream<Path> stream(Path documentPath, Period period) throws IOException {
+        Path archive = documentPath.resolve(ARCHIVE_DIR_NAME);
+        if (!Files.isDirectory(archive)) {
+            return Stream.empty();
+        }
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(archive)) {
+            for (Path path : paths) {
+                Matcher matcher = SEGMENT.matcher(path.getFileName().toString());
+                if (matcher.matches() && period.overlaps(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))))) {
+                    segments.add(path);
+                }
+            }
+        }
+        segments.sort(Comparator.comparing(p -> p.getFileName().toString()));
+        return segments.stream()
+                .flatMap(segment -> {
+                    try {
+                        return Segment.read(segment).entries().stream()
+                                .filter(e -> NoteFiles.isWithin(period, e.name()))
+                                .map(e -> segment.resolve(e.name()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Packs the given notes into their monthly segments (undated notes are ignored) - a note that is already
+     * archived under the same name is replaced. The notes are deleted once their segment is safely stored.
+     *
+     * @param documentPath the notes-dir
+     * @param notes        regular notes to be archived
+     * @return the number of archived notes
+     */
+    public static int archive(Path documentPath, List<Path> notes) throws IOException {
+        Map<Path, List<Path>> bySegment = new TreeMap<>();
+        for (Path note : notes) {
+            segmentOf(documentPath, note.getFileName().toString())
+                    .ifPresent(segment -> bySegment.computeIfAbsent(segment, s -> new ArrayList<>()).add(note));
+        }
+
+        int archived = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            for (Map.Entry<Path, List<Path>> segment : bySegment.entrySet()) {
+                Map<String, Blob> blobs = blobsOf(segment.getKey());
+                for (Path note : segment.getValue()) {
+                    byte[] content = Files.readAllBytes(note);
+                    long modified = Files.getLastModifiedTime(note).toMillis();
+                    blobs.put(note.getFileName().toString(), new Blob(note.getFileName().toString(), modified, content.length, deflate(deflater, content)));
+                }
+                write(segment.getKey(), blobs.values());
+                for (Path note : segment.getValue()) {
+                    Files.delete(note);
+                    archived++;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return archived;
+    }
+
+    /**
+     * Moves the given archived note back to the given location - with its original modification-time (so nothing is
+     * considered changed). A segment that became empty is removed.
+     */
+    public static void restore(Path note, Path destination) throws IOException {
+        byte[] content = read(note);
+        Path segment = note.getParent();
+        Map<String, Blob> blobs = blobsOf(segment);
+        Blob blob = blobs.remove(note.getFileName().toString());
+
+        Files.createDirectories(destination.getParent());
+        Path tmp = Files.createTempFile(destination.getParent(), destination.getFileName().toString(), ".tmp");
+        Files.write(tmp, content);
+        Files.setLastModifiedTime(tmp, FileTime.fromMillis(blob.modified()));
+        Files.move(tmp, destination, ATOMIC_MOVE);
+
+        if (blobs.isEmpty()) {
+            Files.delete(segment);
+        } else {
+            write(segment, blobs.values());
+        }
+    }
+
+    private static Optional<Path> segmentOf(Path documentPath, String fileName) {
+        return NoteFiles.dateOf(fileName)
+                .map(day -> documentPath.resolve(ARCHIVE_DIR_NAME).resolve(YearMonth.from(day) + SEGMENT_SUFFIX));
+    }
+
+    /*
+     * The still deflated notes of the given segment (if it exists) - so they can be taken over without inflating them
+     */
+    private static Map<String, Blob> blobsOf(Path segmentFile) throws IOException {
+        Map<String, Blob> blobs = new TreeMap<>();
+        if (Files.exists(segmentFile)) {
+            Segment segment = Segment.read(segmentFile);
+            for (Entry entry : segment.entries()) {
+                blobs.put(entry.name(), new Blob(entry.name(), entry.modified(), entry.size(), segment.raw(entry)));
+            }
+        }
+        return blobs;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] content) {
+        deflater.reset();
+        deflater.setInput(content);
+        deflater.finish();
+        var out = new ByteArrayOutputStream(Math.max(64, content.length / 3));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    /*
+     * Written to a temp-file which is synced before it replaces the segment - the notes are deleted afterwards, so
+     * the segment has to be on disk for sure
+     */
+    private static void write(Path segmentFile, Iterable<Blob> blobs) throws IOException {
+        Files.createDirectories(segmentFile.getParent());
+        Path tmp = Files.createTempFile(segmentFile.getParent(), segmentFile.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            List<Blob> sorted = new ArrayList<>();
+            blobs.forEach(sorted::add);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            int offset = 0;
+            for (Blob blob : sorted) {
+                byte[] name = blob.name().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(blob.modified());
+                out.writeLong(blob.size());
+                out.writeInt(offset);
+                out.writeInt(blob.content().length);
+                offset += blob.content().length;
+            }
+            for (Blob blob : sorted) {
+                out.write(blob.content());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, segmentFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private record Entry(String name, long modified, long size, int offset, int length) {
+    }
+
+    private record Blob(String name, long modified, long size, byte[] content) {
+    }
+
+    /**
+     * A memory-mapped segment - only its entry-table is decoded upfront
+     */
+    private record Segment(Path file, ByteBuffer buffer, int dataStart, Map<String, Entry> entriesByName) {
+
+        static Segment read(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("Unknown archive format: " + file);
+                }
+                int count = buffer.getInt();
+                Map<String, Entry> entries = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+                    entries.put(entry.name(), entry);
+                }
+                return new Segment(file, buffer, buffer.position(), entries);
+            }
+        }
+
+        List<Entry> entries() {
+            return List.copyOf(entriesByName.values());
+        }
+
+        Optional<Entry> entry(String name) {
+            return Optional.ofNullable(entriesByName.get(name));
+        }
+
+        byte[] raw(Entry entry) {
+            byte[] raw = new byte[entry.length()];
+            buffer.get(dataStart + entry.offset(), raw);
+            return raw;
+        }
+
+        byte[] inflate(Entry entry) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(buffer.slice(dataStart + entry.offset(), entry.length()));
+                byte[] content = new byte[Math.toIntExact(entry.size())];
+                int inflated = 0;
+                while (inflated < content.length && !inflater.finished()) {
+                    int read = inflater.inflate(content, inflated, content.length - inflated);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += read;
+                }
+                if (inflated != content.length) {
+                    throw new IOException("Archived note '" + entry.name() + "' is corrupt: " + file);
+                }
+                return content;
+            } catch (DataFormatException e) {
+                throw new IOException("Archived note '" + entry.name() + "' is corrupt: " + file, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.bender.notes.control;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Tells whether the notes might have changed since a cache was validated the last time - so a long-running process
+ * (i.e. the daemon) can keep caches and indexes resident (see {@link SearchIndex}, {@link HeadlineCache}) and only
+ * looks at the notes-dir again (listing and stat-ing every note) if something happened within it.
+ * <p/>
+ * Changes are tracked by a WatchService on the notes-dir, its shards and the archive - once {@link #watch()} was
+ * called. Before that every call of {@link #generation()} reports a (potential) change, so short-lived processes
+ * validate their caches each time, just as before.
+ * <p/>
+ * Notice: Watch-events are delivered asynchronously - changes made by this very process should be reported via
+ * {@link #invalidate()}. On platforms without native file-events (i.e. macOS) the JDK polls, so changes made by
+ * others (i.e. an editor) are noticed with a delay of a few seconds.
+ */
+@ApplicationScoped
+public class NoteChanges {
+
+    @Inject
+    Config config;
+
+    private WatchService watchService;
+    private long generation;
+
+    /**
+     * Starts tracking changes - from now on {@link #generation()} only increases if the notes-dir changed
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        Path documentPath = config.getDocumentPath();
+        watchService = FileSystems.getDefault().newWatchService();
+        register(documentPath);
+        register(documentPath.resolve(NoteArchive.ARCHIVE_DIR_NAME));
+        for (Path shard : NoteFiles.shards(documentPath, documentPath)) {
+            register(shard);
+        }
+        generation++;
+    }
+
+    /**
+     * @return the current generation of the notes - a cache validated at the same generation is still up-to-date
+     */
+    public synchronized long generation() throws IOException {
+        if (watchService == null) {
+            return ++generation;                // not tracked - so anything could have changed
+        }
+        boolean changed = false;
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            changed |= consume(key);
+        }
+        if (changed) {
+            generation++;
+        }
+        return generation;
+    }
+
+    /**
+     * Marks the notes as changed - for changes made by this process (whose watch-events might not be delivered yet)
+     */
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    /*
+     * Consumes the events of the given key - changes within our own index-dir don't count. A newly created shard or
+     * archive-dir gets watched, too.
+     */
+    private boolean consume(WatchKey key) throws IOException {
+        Path documentPath = config.getDocumentPath();
+        Path directory = (Path) key.watchable();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed = true;                 // we missed something - validating the caches sorts it out
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (path.equals(config.getIndexPath())) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                if (NoteFiles.isShard(documentPath, path)) {
+                    register(path);
+                    for (Path shard : NoteFiles.shards(documentPath, path)) {    // i.e. created by `mkdir -p`
+                        register(shard);
+                    }
+                } else if (path.equals(documentPath.resolve(NoteArchive.ARCHIVE_DIR_NAME))) {
+                    register(path);
+                }
+            }
+            changed = true;
+        }
+        if (!key.reset()) {
+            changed = true;                     // the directory itself vanished
+        }
+        return changed;
+    }
+
+    private void register(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package de.bender.notes.control;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Locates the notes within the notes-dir - which is organized in one of two {@link Layout}s:
+ * <pre>
+ *   flat    : notes/2022-09-12.md
+ *   sharded : notes/2022/09/2022-09-12.md
+ * </pre>
+ * Undated notes (like the todo-file) as well as the `img`-dir always stay on top-level. Traversals understand both
+ * layouts at once (so a half-migrated notes-dir is fine) - they walk shard by shard, skip whole years and months
+ * outside the requested {@link Period} without listing them and return the notes sorted by file-name (which is
+ * chronological for dated notes).
+ * <p/>
+ * Traversals include archived notes, too (see {@link NoteArchive}) - so notes should be read via {@link #stat(Path)}
+ * and {@link #read(Path)} (or {@link MappedNote#map(Path)}) instead of accessing them as files directly.
+ */
+public final class NoteFiles {
+
+    private static final Pattern DATED = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2}).*");
+    private static final Pattern YEAR = Pattern.compile("\\d{4}");
+    private static final Pattern MONTH = Pattern.compile("0[1-9]|1[0-2]");
+    private static final Comparator<Path> BY_NAME = Comparator.comparing(p -> p.getFileName().toString());
+
+    private NoteFiles() {
+    }
+
+    public enum Layout {
+        FLAT, SHARDED;
+
+        /**
+         * @return the location of the given note within the notes-dir according to this layout
+         */
+        public Path resolve(Path documentPath, String fileName) {
+            return this == SHARDED
+                    ? shardOf(fileName).map(documentPath::resolve).orElse(documentPath.resolve(fileName))
+                    : documentPath.resolve(fileName);
+        }
+    }
+
+    /**
+     * @param modified modification-time (in millis)
+     * @param size     of the note's content (in bytes)
+     */
+    public record Stat(long modified, long size) {
+    }
+
+    /**
+     * @return modification-time and size of the given (regular or archived) note - empty if it doesn't exist
+     */
+    public static Optional<Stat> stat(Path note) throws IOException {
+        if (NoteArchive.isArchived(note)) {
+            return NoteArchive.stat(note);
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(note, BasicFileAttributes.class);
+            return attributes.isRegularFile()
+                    ? Optional.of(new Stat(attributes.lastModifiedTime().toMillis(), attributes.size()))
+                    : Optional.empty();
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the content of the given (regular or archived) note
+     */
+    public static byte[] read(Path note) throws IOException {
+        return NoteArchive.isArchived(note) ? NoteArchive.read(note) : Files.readAllBytes(note);
+    }
+
+    /**
+     * @return whether the given path (as handed out by a traversal) is a note - and not i.e. a directory named *md.
+     * Archived notes are taken for granted (they were just listed from their segment).
+     */
+    public static boolean isFile(Path note) {
+        return NoteArchive.isArchived(note) || Files.isRegularFile(note);
+    }
+
+    /**
+     * Deletes the given shard (and its year, see {@link #isShard(Path, Path)}) if nothing is left within
+     */
+    public static void deleteIfEmpty(Path documentPath, Path shard) throws IOException {
+        for (Path directory = shard; isShard(documentPath, directory); directory = directory.getParent()) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                return;                     // still contains notes (or whatever else somebody put there)
+            }
+        }
+    }
+
+    /**
+     * @return whether the given file-name denotes a note at all (same convention as everywhere else: *md)
+     */
+    public static boolean isNote(String fileName) {
+        return fileName.endsWith("md");
+    }
+
+    /**
+     * @return the day of a note named like `yyyy-MM-dd*` - empty for undated notes
+     */
+    public static Optional<LocalDate> dateOf(String fileName) {
+        Matcher matcher = DATED.matcher(fileName);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3))));
+        } catch (DateTimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the shard (relative to the notes-dir) a dated note belongs to in the sharded layout - i.e.
+     * `2022/09/2022-09-12.md`
+     */
+    public static Optional<Path> shardOf(String fileName) {
+        return dateOf(fileName).map(day -> Path.of(String.format("%04d", day.getYear()), String.format("%02d", day.getMonthValue()), fileName));
+    }
+
+    /**
+     * @return the name a note is known by within caches and indexes - its path relative to the notes-dir (which is
+     * just the file-name in the flat layout)
+     */
+    public static String nameOf(Path documentPath, Path note) {
+        return documentPath.relativize(note).toString();
+    }
+
+    /**
+     * @return whether the given directory is a shard (a year- or month-dir) of the notes-dir
+     */
+    public static boolean isShard(Path documentPath, Path directory) {
+        if (!directory.startsWith(documentPath) || directory.equals(documentPath)) {
+            return false;
+        }
+        Path relative = documentPath.relativize(directory);
+        return YEAR.matcher(relative.getName(0).toString()).matches()
+                && (relative.getNameCount() == 1 || (relative.getNameCount() == 2 && MONTH.matcher(relative.getName(1).toString()).matches()));
+    }
+
+    /**
+     * @return all shards (year- and month-dirs) below the given directory - which is either the notes-dir itself or
+     * a shard of it
+     */
+    public static List<Path> shards(Path documentPath, Path directory) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path entry : entries) {
+                if (isShard(documentPath, entry)) {
+                    shards.add(entry);
+                    shards.addAll(shards(documentPath, entry));
+                }
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * @return all notes of the notes-dir - see {@link #stream(Path, Period)}
+     */
+    public static Stream<Path> stream(Path documentPath) throws IOException {
+        return stream(documentPath, Period.ALL);
+    }
+
+    /**
+     * Lazily traverses the notes-dir - only the top-level is listed upfront, shards (and archive-segments) are listed
+     * once the stream reaches them. Undated notes are only part of unbounded periods.
+     * <p/>
+     * Notice: The returned paths aren't checked for being regular files (that'd cost a stat per note) - and failures
+     * to list a shard surface as {@link UncheckedIOException} (just like with {@link Files#list(Path)}).
+     *
+     * @param documentPath the notes-dir
+     * @param period       the notes of interest
+     * @return all matching notes - sorted by file-name
+     */
+    public static Stream<Path> stream(Path documentPath, Period period) throws IOException {
+        List<Path> topLevel = new ArrayList<>();
+        List<Path> years = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(documentPath)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (isNote(name)) {
+                    if (isWithin(period, name)) {
+                        topLevel.add(entry);
+                    }
+                } else if (YEAR.matcher(name).matches() && period.overlaps(Year.of(Integer.parseInt(name))) && Files.isDirectory(entry)) {
+                    years.add(entry);
+                }
+            }
+        }
+        topLevel.sort(BY_NAME);
+        years.sort(BY_NAME);
+
+        Stream<Path> sharded = years.stream()
+                .flatMap(year -> list(year, month -> MONTH.matcher(month.getFileName().toString()).matches()
+                        && period.overlaps(YearMonth.of(Integer.parseInt(year.getFileName().toString()), Integer.parseInt(month.getFileName().toString())))
+                        && Files.isDirectory(month)))
+                .flatMap(month -> list(month, note -> isNote(note.getFileName().toString()) && isWithin(period, note.getFileName().toString())));
+        return merge(merge(topLevel.stream(), sharded), NoteArchive.stream(documentPath, period));
+    }
+
+    /**
+     * @param name of the note - either its file-name or its path relative to the notes-dir (see {@link #nameOf(Path, Path)})
+     * @return whether the note is part of the given period (undated notes are part of unbounded periods only)
+     */
+    public static boolean isWithin(Period period, String name) {
+        return dateOf(Path.of(name).getFileName().toString()).map(period::includes).orElse(!period.isBounded());
+    }
+
+    /*
+     * A single shard is small (a month at most contains a few dozen notes) - so it's fine to sort it in memory
+     */
+    private static Stream<Path> list(Path directory, Predicate<Path> filter) {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                if (filter.test(path)) {
+                    entries.add(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.sort(BY_NAME);
+        return entries.stream();
+    }
+
+    /*
+     * Both inputs are sorted by name already - so a single merge-step keeps the overall order without sorting
+     * everything
+     */
+    private static Stream<Path> merge(Stream<Path> first, Stream<Path> second) {
+        Iterator<Path> left = first.iterator();
+        Iterator<Path> right = second.iterator();
+        Iterator<Path> merged = new Iterator<>() {
+            private Path nextLeft;
+            private Path nextRight;
+
+            @Override
+            public boolean hasNext() {
+                return nextLeft != null || nextRight != null || left.hasNext() || right.hasNext();
+            }
+
+            @Override
+            public Path next() {
+                if (nextLeft == null && left.hasNext()) {
+                    nextLeft = left.next();
+                }
+                if (nextRight == null && right.hasNext()) {
+                    nextRight = right.next();
+                }
+                if (nextLeft == null && nextRight == null) {
+                    throw new NoSuchElementException();
+                }
+                Path next;
+                if (nextRight == null || (nextLeft != null && BY_NAME.compare(nextLeft, nextRight) <= 0)) {
+                    next = nextLeft;
+                    nextLeft = null;
+                } else {
+                    next = nextRight;
+                    nextRight = null;
+                }
+                return next;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
@@ -0,0 +1,135 @@
+package de.bender.notes.control;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Scans a bunch of notes line-by-line for matching lines - the files are distributed among several workers but
+ * the results are handed out in the order of the given files. Every worker scans the memory-mapped bytes of its
+ * file (see {@link MappedNote}) and decodes only the matching lines, and only a bounded number of files is in flight
+ * at any time - so memory consumption doesn't depend on the size of the haystack.
+ */
+public class NoteScanner {
+
+    private static final int FILES_IN_FLIGHT_PER_WORKER = 4;
+
+    private final int threads;
+    private final int limit;
+    private final boolean firstMatchOnly;
+
+    /**
+     * @param threads        number of workers
+     * @param limit          maximum number of matches to be reported overall ({@code <= 0} for no limit)
+     * @param firstMatchOnly whether scanning a file should stop at its first match (i.e. if you're only
+     *                       interested in the files containing a match)
+     */
+    public NoteScanner(int threads, int limit, boolean firstMatchOnly) {
+        this.threads = Math.max(1, threads);
+        this.limit = limit;
+        this.firstMatchOnly = firstMatchOnly;
+    }
+
+    /**
+     * @param files    to be scanned (results are reported in that order)
+     * @param matcher  decides whether a line matches (preferably on the raw bytes)
+     * @param consumer receives the matches per file (only for files with at least one match)
+     * @return a summary of the whole scan
+     */
+    public Summary scan(List<Path> files, NeedleMatcher matcher, Consumer<FileMatches> consumer) throws InterruptedException {
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        AtomicBoolean done = new AtomicBoolean(false);    // signals workers that nobody is interested anymore
+        Deque<Future<Outcome>> inFlight = new ArrayDeque<>();
+        int matches = 0;
+        int matchingFiles = 0;
+
+        try {
+            int next = 0;
+            while (!done.get() && (next < files.size() || !inFlight.isEmpty())) {
+                while (next < files.size() && inFlight.size() < threads * FILES_IN_FLIGHT_PER_WORKER) {
+                    Path file = files.get(next++);
+                    inFlight.add(workers.submit(() -> scan(file, matcher, done)));
+                }
+
+                Outcome outcome = take(inFlight.poll());
+                if (outcome.failure() != null) {
+                    System.err.printf("Couldn't scan '%s': %s%n", outcome.result().file().getFileName(), outcome.failure());
+                }
+                FileMatches result = outcome.result();
+                if (result.matches().isEmpty()) {
+                    continue;
+                }
+                if (limit > 0 && matches + result.matches().size() >= limit) {
+                    result = new FileMatches(result.file(), result.matches().subList(0, limit - matches));
+                    done.set(true);
+                }
+                matches += result.matches().size();
+                matchingFiles++;
+                consumer.accept(result);
+            }
+        } finally {
+            done.set(true);
+            inFlight.forEach(f -> f.cancel(true));
+            workers.shutdownNow();
+        }
+        return new Summary(matches, matchingFiles, files.size());
+    }
+
+    private Outcome take(Future<Outcome> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());      // workers report their failures as outcome
+        }
+    }
+
+    private Outcome scan(Path file, NeedleMatcher matcher, AtomicBoolean done) {
+        List<Match> matches = new ArrayList<>();
+        try {
+            MappedNote note = MappedNote.map(file);
+            note.forEachLine((line, start, end) -> {
+                if (done.get()) {
+                    return false;
+                }
+                if (matcher.matches(note.bytes(), start, end)) {
+                    matches.add(new Match(line, note.decode(start, end)));
+                    // more matches of this file would never be reported anyways
+                    return !firstMatchOnly && (limit <= 0 || matches.size() < limit);
+                }
+                return true;
+            });
+            return new Outcome(new FileMatches(file, matches), null);
+        } catch (IOException e) {
+            return new Outcome(new FileMatches(file, matches), e);
+        }
+    }
+
+    /**
+     * @param line (zero-based) number of the matching line
+     * @param text content of the matching line
+     */
+    public record Match(int line, String text) {
+    }
+
+    public record FileMatches(Path file, List<Match> matches) {
+    }
+
+    private record Outcome(FileMatches result, IOException failure) {
+    }
+
+    /**
+     * @param matches       number of reported matches
+     * @param matchingFiles number of files containing at least one reported match
+     * @param scannedFiles  number of files that were considered
+     */
+    public record Summary(int matches, int matchingFiles, int scannedFiles) {
+    }
+}
@@ -5,8 +5,8 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -29,6 +29,9 @@ public class NoteService {
      * Makes sure that file referenced by the given {@code fileName} exists - if the {@code fileName}
      * is {@code null} the default (see {@link Config}) will be used
      *
+     * <p/>
+     * An archived note (see {@link NoteArchive}) is restored - so it can be changed again.
+     *
      * @param fileName optional fileName to be checked if it exists in the default notes-directory
      * @return the {@link Path}-representation of the file
      * @throws IOException if the file doesn't exist and cannot be created
@@ -39,7 +42,8 @@ public class NoteService {
                 .map(s -> config.getNotesFilePath(s))
                 .orElse(config.getNotesFilePath());
 
-        if (Files.notExists(noteFile)) {
+        if (Files.notExists(noteFile) && !restoreIfArchived(noteFile)) {
+            Files.createDirectories(noteFile.getParent(), asFileAttribute(Set.of(OWNER_EXECUTE, OWNER_READ, OWNER_WRITE)));
             Files.createFile(noteFile, asFileAttribute(Set.of(OWNER_EXECUTE, OWNER_READ, OWNER_WRITE)));
         }
         return noteFile;
@@ -76,9 +80,23 @@ public class NoteService {
     }
 
     public void reinitOutput(Path toBeInitialized) throws IOException {
+        reinitOutput(toBeInitialized, Set.of());
+    }
+
+    /**
+     * Same as {@link #reinitOutput(Path)} - but the given files (and the directories containing them) are kept, i.e.
+     * published assets that don't have to be published again (see {@link AssetPublisher})
+     */
+    public void reinitOutput(Path toBeInitialized, Set<Path> keep) throws IOException {
+        Set<Path> kept = new HashSet<>();
+        for (Path path : keep) {
+            for (Path p = path; p != null && p.startsWith(config.getDocumentOutputPath()); p = p.getParent()) {
+                kept.add(p);
+            }
+        }
         if (Files.exists(config.getDocumentOutputPath())) {
             try (Stream<Path> walk = Files.walk(config.getDocumentOutputPath())) {
-                walk.sorted(Comparator.reverseOrder()).forEach(this::delete);
+                walk.sorted(Comparator.reverseOrder()).filter(p -> !kept.contains(p)).forEach(this::delete);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -99,7 +117,8 @@ public class NoteService {
      * Takes the given filename (with or without suffix) and tries to identify the respective file in the
      * configured document-dir. If it can be found the {@link Path}-representation is returned.
      * <p/>
-     * Notice: If the {@code fileName} is {@code null} we create the default-notes file for the current day.
+     * Notice: If the {@code fileName} is {@code null} we create the default-notes file for the current day. An
+     * archived note (see {@link NoteArchive}) is restored - so it can be edited (or deleted).
      * <p/>
      * @param fileName to be looked for (i.e. '2022-09-12' or '2022-09-12.md')
      * @return {@link Path} representation
@@ -108,9 +127,52 @@ public class NoteService {
      */
     public Path getNoteFile(String fileName) throws IOException {
         this.ensureDocumentsDirExists();
-        return Optional.ofNullable(fileName)
-                .map(name -> (fileName.matches(".*(.md|.MD)$")) ? fileName : fileName + ".md")
-                .map(name -> Paths.get(config.getDocumentPath().toString(), name))
-                .orElse(this.ensureNotesFileExists());
+        if (fileName == null) {
+            return this.ensureNotesFileExists();
+        }
+        Path noteFile = config.getNotesFilePath(fileName);
+        if (Files.notExists(noteFile)) {
+            restoreIfArchived(noteFile);
+        }
+        return noteFile;
+    }
+
+    /**
+     * Same as {@link #getNoteFile(String)} - but an archived note is just extracted into a temporary file (which is
+     * removed on exit) instead of being restored, since it's only read
+     */
+    public Path getReadableNoteFile(String fileName) throws IOException {
+        if (fileName == null) {
+            return getNoteFile(null);
+        }
+        Path noteFile = config.getNotesFilePath(fileName);
+        Optional<Path> archived = Files.notExists(noteFile)
+                ? NoteArchive.find(config.getDocumentPath(), noteFile.getFileName().toString())
+                : Optional.empty();
+        if (archived.isEmpty()) {
+            return getNoteFile(fileName);
+        }
+        Path extracted = Files.createTempFile("notes-", "-" + noteFile.getFileName());
+        extracted.toFile().deleteOnExit();
+        return Files.write(extracted, NoteArchive.read(archived.get()));
+    }
+
+    /**
+     * @param fileName of the note (with or without suffix)
+     * @return the note - either as regular file or within the archive (see {@link NoteFiles#read(Path)})
+     */
+    public Optional<Path> findNote(String fileName) throws IOException {
+        Path noteFile = config.getNotesFilePath(fileName);
+        return Files.exists(noteFile)
+                ? Optional.of(noteFile)
+                : NoteArchive.find(config.getDocumentPath(), noteFile.getFileName().toString());
+    }
+
+    private boolean restoreIfArchived(Path noteFile) throws IOException {
+        Optional<Path> archived = NoteArchive.find(config.getDocumentPath(), noteFile.getFileName().toString());
+        if (archived.isPresent()) {
+            NoteArchive.restore(archived.get(), noteFile);
+        }
+        return archived.isPresent();
     }
 }
@@ -0,0 +1,77 @@
+package de.bender.notes.control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory LRU-cache of pages rendered from notes - a cached page is only valid as long as the modification-time
+ * and size of its note are the same as when it was rendered. Once the cache is full the least recently requested
+ * page is evicted.
+ */
+public class PageCache {
+
+    private final Map<String, CachedPage> pages;
+
+    /**
+     * @param capacity max number of pages kept in memory
+     */
+    public PageCache(int capacity) {
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the page rendered for the given note - or nothing if it wasn't rendered yet or the note changed since
+     */
+    public synchronized Optional<Page> get(String name, long modified, long size) {
+        CachedPage cached = pages.get(name);
+        if (cached == null || cached.modified() != modified || cached.size() != size) {
+            return Optional.empty();
+        }
+        return Optional.of(cached.page());
+    }
+
+    public synchronized void put(String name, long modified, long size, Page page) {
+        pages.put(name, new CachedPage(page, modified, size));
+    }
+
+    /**
+     * A response-body ready to be sent - text-content is compressed once up-front, so it doesn't have to be
+     * compressed again for every request.
+     *
+     * @param contentType of the body
+     * @param body        the (uncompressed) content
+     * @param gzipped     the gzip-compressed content (or {@code null} for content that doesn't compress well)
+     * @param etag        (weak) entity-tag derived from the content
+     */
+    public record Page(String contentType, byte[] body, byte[] gzipped, String etag) {
+
+        public static Page of(String contentType, byte[] body) {
+            boolean compressible = contentType.startsWith("text/") || contentType.startsWith("application/json");
+            return new Page(contentType, body, compressible ? gzip(body) : null,
+                    "W/\"" + RenderManifest.hash(body).substring(0, 32) + "\"");
+        }
+
+        private static byte[] gzip(byte[] content) {
+            var compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+            try (var out = new GZIPOutputStream(compressed)) {
+                out.write(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);     // cannot happen for in-memory streams
+            }
+            return compressed.toByteArray();
+        }
+    }
+
+    private record CachedPage(Page page, long modified, long size) {
+    }
+}
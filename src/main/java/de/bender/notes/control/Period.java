@@ -0,0 +1,37 @@
+package de.bender.notes.control;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+
+/**
+ * A (possibly open) range of days - used to restrict traversals of the notes-dir to the notes of interest (and to
+ * prune whole shards that lie outside of it, see {@link NoteFiles}).
+ *
+ * @param from  first day included ({@code null} for no lower bound)
+ * @param until last day included ({@code null} for no upper bound)
+ */
+public record Period(LocalDate from, LocalDate until) {
+
+    public static final Period ALL = new Period(null, null);
+
+    /**
+     * @return {@code true} if at least one of both bounds is set - undated notes (like the todo-file) are part of
+     * unbounded periods only
+     */
+    public boolean isBounded() {
+        return from != null || until != null;
+    }
+
+    public boolean includes(LocalDate day) {
+        return (from == null || !day.isBefore(from)) && (until == null || !day.isAfter(until));
+    }
+
+    public boolean overlaps(YearMonth month) {
+        return (from == null || !month.atEndOfMonth().isBefore(from)) && (until == null || !month.atDay(1).isAfter(until));
+    }
+
+    public boolean overlaps(Year year) {
+        return (from == null || year.getValue() >= from.getYear()) && (until == null || year.getValue() <= until.getYear());
+    }
+}
@@ -0,0 +1,58 @@
+package de.bender.notes.control;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight-recorder events of the render-pipeline - i.e. record them via
+ * {@code java -XX:StartFlightRecording=filename=render.jfr ... render} and inspect them with JDK Mission Control or
+ * {@code jfr print --events de.bender.notes.* render.jfr}. As long as no recording is running these events cost
+ * (next to) nothing.
+ */
+public final class RenderEvents {
+
+    private RenderEvents() {
+    }
+
+    @Name("de.bender.notes.Parse")
+    @Label("Parse Note")
+    @Category({"Notes", "Render"})
+    public static class Parse extends Event {
+        @Label("Note")
+        public String note;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    /**
+     * Rendering a note and writing its page - both are a single step, since the HTML is streamed right into the
+     * page's file (so there's no separate event for rendering)
+     */
+    @Name("de.bender.notes.Write")
+    @Label("Render and Write Note")
+    @Category({"Notes", "Render"})
+    public static class Write extends Event {
+        @Label("Note")
+        public String note;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("de.bender.notes.Index")
+    @Label("Write Index")
+    @Category({"Notes", "Render"})
+    public static class Index extends Event {
+        @Label("Index")
+        public String index;
+
+        @Label("Entries")
+        public long entries;
+    }
+}
@@ -0,0 +1,117 @@
+package de.bender.notes.control;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Bookkeeping for incremental renders - remembers for every rendered markdown-file its content-hash, its
+ * modification-time/size (as cheap first-level check), the output-file it was rendered to and its headlines (so
+ * overview pages can be rendered without reading unchanged notes again).
+ * <p/>
+ * The manifest is persisted as a simple tab-separated text-file (one line per note) so it can be inspected
+ * (and, if in doubt, just deleted) by hand - a missing or unreadable manifest simply results in a full render.
+ */
+public class RenderManifest {
+
+    private static final String SEPARATOR = "\t";
+    private static final String HEADLINE_SEPARATOR = "\u001F";
+
+    private final Map<String, Entry> entries;
+
+    private RenderManifest(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static RenderManifest empty() {
+        return new RenderManifest(new TreeMap<>());
+    }
+
+    /**
+     * @param manifestFile to be read
+     * @return the persisted manifest or an empty one if there is none (or it's unreadable)
+     */
+    public static RenderManifest load(Path manifestFile) {
+        if (Files.notExists(manifestFile)) {
+            return empty();
+        }
+        try {
+            Map<String, Entry> entries = Files.readAllLines(manifestFile).stream()
+                    .map(line -> line.split(SEPARATOR, -1))
+                    .filter(parts -> parts.length == 6)
+                    .map(parts -> new Entry(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]), parts[4], decode(parts[5])))
+                    .collect(Collectors.toMap(Entry::source, e -> e, (a, b) -> b, TreeMap::new));
+            return new RenderManifest(entries);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Couldn't read render-manifest (falling back to a full render): " + manifestFile);
+            return empty();
+        }
+    }
+
+    public void store(Path manifestFile) throws IOException {
+        List<String> lines = entries.values().stream()
+                .map(e -> String.join(SEPARATOR, e.source(), e.hash(), String.valueOf(e.modified()), String.valueOf(e.size()), e.output(), encode(e.headlines())))
+                .toList();
+        Files.write(manifestFile, lines);
+    }
+
+    public Optional<Entry> get(String source) {
+        return Optional.ofNullable(entries.get(source));
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.source(), entry);
+    }
+
+    public Optional<Entry> remove(String source) {
+        return Optional.ofNullable(entries.remove(source));
+    }
+
+    public List<Entry> entries() {
+        return List.copyOf(entries.values());
+    }
+
+    private static String encode(List<Headline> headlines) {
+        return headlines.stream()
+                .map(h -> h.level() + " " + h.text().replaceAll("\\p{Cntrl}", " "))
+                .collect(Collectors.joining(HEADLINE_SEPARATOR));
+    }
+
+    private static List<Headline> decode(String headlines) {
+        return Arrays.stream(headlines.split(HEADLINE_SEPARATOR))
+                .filter(h -> !h.isEmpty())
+                .map(h -> new Headline(Integer.parseInt(h.substring(0, h.indexOf(' '))), h.substring(h.indexOf(' ') + 1)))
+                .toList();
+    }
+
+    /**
+     * @return hex-encoded SHA-256 digest of the given content
+     */
+    public static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * @param source    file-name of the markdown-file (relative to the documents-dir)
+     * @param hash      content-hash of the markdown-file at the time it was rendered
+     * @param modified  last-modified-time (in millis) of the markdown-file at the time it was rendered
+     * @param size      size (in bytes) of the markdown-file at the time it was rendered
+     * @param output    file-name of the rendered HTML-file (relative to the docset's documents-dir)
+     * @param headlines all headings of the markdown-file (in document order)
+     */
+    public record Entry(String source, String hash, long modified, long size, String output, List<Headline> headlines) {
+    }
+}
@@ -0,0 +1,578 @@
+package de.bender.notes.control;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Persistent inverted index over all notes - maps normalized (lower-cased) terms to the lines they occur in, so a
+ * search doesn't have to read the whole haystack of notes over and over again.
+ * <p/>
+ * The index lives in a single binary file within the notes-dir (see {@link Config#getIndexPath()}) that is
+ * memory-mapped for lookups. Its layout is
+ * <pre>
+ *   header     : magic, version
+ *   files      : count, (name, modified, size)*
+ *   terms      : count, (termOffset, postingsOffset, postingsCount)*    - fixed size entries sorted by term
+ *   term-pool  : (length, utf-8 bytes)*
+ *   postings   : (fileId, line, lineOffset)*                            - grouped by term, sorted by file and line
+ * </pre>
+ * Before each lookup the index is brought up-to-date - only notes whose modification-time or size changed are
+ * read again; if nothing changed the index file is left untouched. Words longer than 64 characters (i.e. hashes,
+ * base64) aren't indexed - their lines are marked instead, and every lookup verifies those lines, too. The mapped index stays resident - as long as
+ * {@link NoteChanges} doesn't report any change the notes aren't looked at again at all.
+ */
+@ApplicationScoped
+public class SearchIndex {
+
+    private static final int MAGIC = 0x4E494458;          // "NIDX"
+    private static final int VERSION = 2;
+    private static final int TERM_ENTRY_SIZE = 3 * Integer.BYTES;
+    private static final int POSTING_SIZE = 3 * Integer.BYTES;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final String OVERLONG = "";            // marks lines with words too long to be indexed
+    private static final String INDEX_FILE_NAME = "search.idx";
+    // by file-name first - so hits are in chronological order no matter where the notes live (shards, archive)
+    private static final Comparator<Hit> BY_NOTE_AND_LINE = Comparator.comparing((Hit hit) -> hit.file().getFileName().toString())
+            .thenComparing(Hit::file)
+            .thenComparingInt(Hit::line);
+
+    @Inject
+    Config config;
+
+    @Inject
+    NoteChanges changes;
+
+    private volatile Segment segment;
+    private long validatedAt = -1;              // generation (see NoteChanges) the segment was last validated at
+    private Period validatedFor;
+
+    /**
+     * Looks up the given needles (OR-combined) - a line matches if it contains any of the needles (case-insensitive),
+     * just like a scan of all notes (see {@link NeedleMatcher#literal(List)}) would find it.
+     * <p/>
+     * A needle consisting of a single term is answered by the index alone (all terms containing it). The lines of a
+     * needle consisting of several terms (or punctuation) are looked up by its terms and verified afterwards - just
+ * like the lines containing words too long to be indexed. Only
+     * needles the index doesn't know anything about (no terms at all or terms too long to be indexed) cause the
+     * indexed notes to be scanned.
+     *
+     * @param needles to be looked for
+     * @return all matching lines - sorted by file-name and line-number
+     */
+    public List<Hit> search(List<String> needles) throws IOException {
+        return search(needles, Period.ALL);
+    }
+
+    /**
+     * Same as {@link #search(List)} - but only notes within the given period are brought up-to-date and matched
+     * (so notes outside of it are neither looked at nor read).
+     */
+    public List<Hit> search(List<String> needles, Period period) throws IOException {
+        Segment index = update(period);
+
+        Set<Hit> hits = new TreeSet<>(BY_NOTE_AND_LINE);
+        for (String needle : needles) {
+            NeedleMatcher matcher = NeedleMatcher.literal(List.of(needle));
+            List<String> terms = tokenize(needle);
+            if (terms.isEmpty() || !terms.equals(tokenize(needle, Integer.MAX_VALUE))) {
+                hits.addAll(scan(index, period, matcher));      // nothing (or not everything) of it is indexed
+                continue;
+            }
+
+            List<Hit> overlong = index.overlong();
+            Set<Hit> candidates = new TreeSet<>(BY_NOTE_AND_LINE);
+            index.lookup(terms.get(0)).stream()
+                    .filter(hit -> NoteFiles.isWithin(period, hit.file().getFileName().toString()))
+                    .forEach(candidates::add);
+            for (String term : terms.subList(1, terms.size())) {
+                Set<Hit> containing = new TreeSet<>(BY_NOTE_AND_LINE);
+                containing.addAll(index.lookup(term));
+                containing.addAll(overlong);
+                candidates.retainAll(containing);
+            }
+
+            if (terms.size() == 1 && terms.get(0).equals(needle.toLowerCase(Locale.ROOT))) {
+                hits.addAll(candidates);                        // a plain term - every candidate contains it
+            } else {
+                hits.addAll(verify(candidates, matcher));       // the terms have to appear as a whole
+            }
+            Set<Hit> unindexed = new TreeSet<>(BY_NOTE_AND_LINE);
+            overlong.stream()
+                    .filter(hit -> NoteFiles.isWithin(period, hit.file().getFileName().toString()))
+                    .filter(hit -> !hits.contains(hit))
+                    .forEach(unindexed::add);
+            hits.addAll(verify(unindexed, matcher));            // the needle might be part of an overlong word
+        }
+        return List.copyOf(hits);
+    }
+
+    /*
+     * Keeps the candidates containing a match - they're sorted by note, so every note is mapped just once
+     */
+    private static List<Hit> verify(Set<Hit> candidates, NeedleMatcher matcher) throws IOException {
+        List<Hit> verified = new ArrayList<>();
+        MappedNote note = null;
+        for (Hit candidate : candidates) {
+            if (note == null || !note.file().equals(candidate.file())) {
+                note = MappedNote.map(candidate.file());
+            }
+            if (matcher.matches(note.bytes(), candidate.offset(), note.lineEnd(candidate.offset()))) {
+                verified.add(candidate);
+            }
+        }
+        return verified;
+    }
+
+    /*
+     * Matches every line of the indexed notes within the given period - for needles the index cannot answer
+     */
+    private static List<Hit> scan(Segment index, Period period, NeedleMatcher matcher) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        for (IndexedFile file : index.files()) {
+            if (!NoteFiles.isWithin(period, file.name())) {
+                continue;
+            }
+            MappedNote note = MappedNote.map(index.directory.resolve(file.name()));
+            note.forEachLine((line, start, end) -> {
+                if (matcher.matches(note.bytes(), start, end)) {
+                    hits.add(new Hit(note.file(), line, start));
+                }
+                return true;
+            });
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of indexed notes (as of the last update)
+     */
+    public int size() throws IOException {
+        Segment index = segment;
+        return (index != null ? index : update()).files().size();
+    }
+
+    /**
+     * @return the number of indexed notes within the given period
+     */
+    public int size(Period period) throws IOException {
+        Segment index = segment;
+        return (int) (index != null ? index : update(period)).files().stream()
+                .filter(f -> NoteFiles.isWithin(period, f.name()))
+                .count();
+    }
+
+    /**
+     * Reads the content of the line the given hit refers to (without reading the rest of the file)
+     */
+    public String readLine(Hit hit) throws IOException {
+        if (NoteArchive.isArchived(hit.file())) {
+            MappedNote note = MappedNote.map(hit.file());
+            return note.decode(hit.offset(), note.lineEnd(hit.offset()));
+        }
+        try (FileChannel channel = FileChannel.open(hit.file(), READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            var line = new ByteArrayOutputStream();
+            long position = hit.offset();
+            int read;
+            while ((read = channel.read(buffer.clear(), position)) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        return stripCarriageReturn(line.toString(StandardCharsets.UTF_8));
+                    }
+                    line.write(b);
+                }
+                position += read;
+            }
+            return stripCarriageReturn(line.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Brings the persisted index in sync with the notes-dir - only changed notes are (re-)indexed
+     *
+     * @return the current state of the index
+     */
+    public Segment update() throws IOException {
+        return update(Period.ALL);
+    }
+
+    /**
+     * Same as {@link #update()} - but only notes within the given period are looked at, all others stay indexed as
+     * they are
+     */
+    public synchronized Segment update(Period period) throws IOException {
+        long generation = changes.generation();
+        if (segment != null && generation == validatedAt && (validatedFor.equals(Period.ALL) || validatedFor.equals(period))) {
+            return segment;                     // nothing changed since - no need to look at the notes at all
+        }
+        segment = validate(period);
+        validatedAt = generation;
+        validatedFor = period;
+        return segment;
+    }
+
+    private Segment validate(Period period) throws IOException {
+        Path documentPath = config.getDocumentPath();
+        Path indexFile = config.getIndexPath().resolve(INDEX_FILE_NAME);
+        Segment current = segment != null ? segment : Segment.open(indexFile);      // the resident one is as good
+
+        List<Path> markdownFiles;
+        try (Stream<Path> paths = NoteFiles.stream(documentPath, period)) {
+            markdownFiles = paths
+                    .filter(NoteFiles::isFile)
+                    .toList();
+        }
+
+        Map<String, IndexedFile> known = new HashMap<>();
+        current.files().forEach(f -> known.put(f.name(), f));
+
+        List<IndexedFile> files = current.files().stream()
+                .filter(f -> !NoteFiles.isWithin(period, f.name()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        Set<String> changed = new LinkedHashSet<>();
+        for (Path note : markdownFiles) {
+            Optional<NoteFiles.Stat> stat = NoteFiles.stat(note);
+            if (stat.isEmpty()) {
+                continue;                       // deleted since we listed the dir
+            }
+            IndexedFile file = new IndexedFile(NoteFiles.nameOf(documentPath, note), stat.get().modified(), stat.get().size());
+            files.add(file);
+            if (!file.equals(known.get(file.name()))) {
+                changed.add(file.name());
+            }
+        }
+        if (changed.isEmpty() && files.size() == known.size()) {
+            return current.withDirectory(documentPath);
+        }
+
+        files.sort(Comparator.comparing(f -> Path.of(f.name()).getFileName().toString()));
+        Map<String, List<Posting>> postings = current.postingsByFile(changed);
+        for (String name : changed) {
+            postings.put(name, tokenize(documentPath.resolve(name)));
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp");
+        write(tmp, files, postings);
+        Files.move(tmp, indexFile, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        return Segment.open(indexFile).withDirectory(documentPath);
+    }
+
+    private static List<Posting> tokenize(Path note) throws IOException {
+        MappedNote mapped = MappedNote.map(note);
+        List<Posting> postings = new ArrayList<>();
+        mapped.forEachLine((line, start, end) -> {
+            for (String term : new LinkedHashSet<>(tokenize(mapped, start, end))) {
+                postings.add(new Posting(term, line, start));
+            }
+            return true;
+        });
+        return postings;
+    }
+
+    /*
+     * Tokenizes the given line on its raw bytes - runs of ASCII letters/digits are turned into terms directly, only
+     * runs containing non-ASCII bytes get decoded (and tokenized as text, since they may contain separators as well).
+     * Runs too long to be indexed are reported as OVERLONG marker.
+     */
+    private static List<String> tokenize(MappedNote note, int start, int end) {
+        ByteBuffer bytes = note.bytes();
+        List<String> terms = new ArrayList<>();
+        int runStart = -1;
+        boolean ascii = true;
+        for (int i = start; i <= end; i++) {
+            int b = i < end ? bytes.get(i) & 0xFF : ' ';
+            boolean partOfRun = b >= 0x80 || Character.isLetterOrDigit(b);
+            if (partOfRun) {
+                if (runStart < 0) {
+                    runStart = i;
+                    ascii = true;
+                }
+                ascii &= b < 0x80;
+            } else if (runStart >= 0) {
+                if (!ascii) {
+                    for (String term : tokenize(note.decode(runStart, i), Integer.MAX_VALUE)) {
+                        terms.add(term.length() <= MAX_TERM_LENGTH ? term : OVERLONG);
+                    }
+                } else if (i - runStart > MAX_TERM_LENGTH) {
+                    terms.add(OVERLONG);
+                } else {
+                    byte[] term = new byte[i - runStart];
+                    for (int j = 0; j < term.length; j++) {
+                        term[j] = (byte) Character.toLowerCase(bytes.get(runStart + j));
+                    }
+                    terms.add(new String(term, StandardCharsets.US_ASCII));
+                }
+                runStart = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return the normalized terms (lower-cased runs of letters/digits) of the given text
+     */
+    static List<String> tokenize(String text) {
+        return tokenize(text, MAX_TERM_LENGTH);
+    }
+
+    /*
+     * Terms longer than the given length are dropped
+     */
+    private static List<String> tokenize(String text, int maxLength) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean partOfTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (partOfTerm && start < 0) {
+                start = i;
+            } else if (!partOfTerm && start >= 0) {
+                if (i - start <= maxLength) {
+                    terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static void write(Path target, List<IndexedFile> files, Map<String, List<Posting>> postingsByFile) throws IOException {
+        // term -> postings (as fileId, line, offset) - files are sorted, hence postings are sorted, too
+        TreeMap<String, List<int[]>> terms = new TreeMap<>();
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            for (Posting posting : postingsByFile.getOrDefault(files.get(fileId).name(), List.of())) {
+                terms.computeIfAbsent(posting.term(), t -> new ArrayList<>())
+                        .add(new int[]{fileId, posting.line(), posting.offset()});
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            for (IndexedFile file : files) {
+                byte[] name = file.name().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(file.modified());
+                out.writeLong(file.size());
+            }
+
+            List<byte[]> termBytes = terms.keySet().stream().map(t -> t.getBytes(StandardCharsets.UTF_8)).toList();
+            int termTableStart = out.size() + Integer.BYTES;
+            int poolStart = termTableStart + terms.size() * TERM_ENTRY_SIZE;
+            int postingsStart = poolStart + termBytes.stream().mapToInt(b -> Short.BYTES + b.length).sum();
+
+            out.writeInt(terms.size());
+            int termOffset = poolStart;
+            int postingsOffset = postingsStart;
+            int i = 0;
+            for (List<int[]> postings : terms.values()) {
+                out.writeInt(termOffset);
+                out.writeInt(postingsOffset);
+                out.writeInt(postings.size());
+                termOffset += Short.BYTES + termBytes.get(i++).length;
+                postingsOffset += postings.size() * POSTING_SIZE;
+            }
+            for (byte[] term : termBytes) {
+                out.writeShort(term.length);
+                out.write(term);
+            }
+            for (List<int[]> postings : terms.values()) {
+                for (int[] posting : postings) {
+                    out.writeInt(posting[0]);
+                    out.writeInt(posting[1]);
+                    out.writeInt(posting[2]);
+                }
+            }
+        }
+    }
+
+    private static String stripCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * @param file   the note containing the hit
+     * @param line   (zero-based) number of the line within the note
+     * @param offset byte-offset of the line's start within the note
+     */
+    public record Hit(Path file, int line, int offset) {
+    }
+
+    private record IndexedFile(String name, long modified, long size) {
+    }
+
+    private record Posting(String term, int line, int offset) {
+    }
+
+    /**
+     * Read-only, memory-mapped view on a persisted index
+     */
+    public static class Segment {
+
+        private final ByteBuffer buffer;
+        private final List<IndexedFile> files;
+        private final int termCount;
+        private final int termTableStart;
+        private final Path directory;
+
+        private Segment(ByteBuffer buffer, List<IndexedFile> files, int termCount, int termTableStart, Path directory) {
+            this.buffer = buffer;
+            this.files = files;
+            this.termCount = termCount;
+            this.termTableStart = termTableStart;
+            this.directory = directory;
+        }
+
+        /**
+         * @return the mapped index - or an empty one if it doesn't exist or cannot be read
+         */
+        static Segment open(Path indexFile) {
+            if (Files.notExists(indexFile)) {
+                return new Segment(ByteBuffer.allocate(0), List.of(), 0, 0, null);
+            }
+            try (FileChannel channel = FileChannel.open(indexFile, READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("unknown index format");
+                }
+                int fileCount = buffer.getInt();
+                List<IndexedFile> files = new ArrayList<>(fileCount);
+                for (int i = 0; i < fileCount; i++) {
+                    byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    files.add(new IndexedFile(new String(name, StandardCharsets.UTF_8), buffer.getLong(), buffer.getLong()));
+                }
+                int termCount = buffer.getInt();
+                return new Segment(buffer, files, termCount, buffer.position(), null);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Couldn't read search-index (it'll be re-created): " + indexFile);
+                return new Segment(ByteBuffer.allocate(0), List.of(), 0, 0, null);
+            }
+        }
+
+        private Segment withDirectory(Path directory) {
+            return new Segment(buffer, files, termCount, termTableStart, directory);
+        }
+
+        private List<IndexedFile> files() {
+            return files;
+        }
+
+        /**
+         * @param term to be looked up (already normalized)
+         * @return the postings of all terms containing the given one (as part of a word, the index only knows terms)
+         */
+        List<Hit> lookup(String term) {
+            byte[] needle = term.getBytes(StandardCharsets.UTF_8);
+            List<Hit> hits = new ArrayList<>();
+            for (int i = 0; i < termCount; i++) {
+                if (contains(buffer.getInt(termTableStart + i * TERM_ENTRY_SIZE), needle)) {
+                    addPostings(i, hits);
+                }
+            }
+            return hits;
+        }
+
+        /**
+         * @return the lines containing words too long to be indexed - the index cannot tell what they contain
+         */
+        List<Hit> overlong() {
+            List<Hit> hits = new ArrayList<>();
+            if (termCount > 0 && termAt(0).equals(OVERLONG)) {       // the empty marker sorts first
+                addPostings(0, hits);
+            }
+            return hits;
+        }
+
+        private void addPostings(int termIndex, List<Hit> hits) {
+            int postingsOffset = buffer.getInt(termTableStart + termIndex * TERM_ENTRY_SIZE + Integer.BYTES);
+            int postingsCount = buffer.getInt(termTableStart + termIndex * TERM_ENTRY_SIZE + 2 * Integer.BYTES);
+            for (int p = 0; p < postingsCount; p++) {
+                int position = postingsOffset + p * POSTING_SIZE;
+                hits.add(new Hit(directory.resolve(files.get(buffer.getInt(position)).name()),
+                        buffer.getInt(position + Integer.BYTES),
+                        buffer.getInt(position + 2 * Integer.BYTES)));
+            }
+        }
+
+        /*
+         * Compares the raw UTF-8 bytes of the pooled term - a character's encoding never occurs within another one's,
+         * so there's no need to decode every single term
+         */
+        private boolean contains(int termOffset, byte[] needle) {
+            int length = buffer.getShort(termOffset) & 0xFFFF;
+            int start = termOffset + Short.BYTES;
+            for (int from = start; from <= start + length - needle.length; from++) {
+                int i = 0;
+                while (i < needle.length && buffer.get(from + i) == needle[i]) {
+                    i++;
+                }
+                if (i == needle.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /*
+         * Decodes all postings of all files except the given ones - that's the starting point for an update
+         */
+        private Map<String, List<Posting>> postingsByFile(Set<String> excluded) {
+            Map<String, List<Posting>> postings = new HashMap<>();
+            for (int i = 0; i < termCount; i++) {
+                String term = termAt(i);
+                int postingsOffset = buffer.getInt(termTableStart + i * TERM_ENTRY_SIZE + Integer.BYTES);
+                int postingsCount = buffer.getInt(termTableStart + i * TERM_ENTRY_SIZE + 2 * Integer.BYTES);
+                for (int p = 0; p < postingsCount; p++) {
+                    int position = postingsOffset + p * POSTING_SIZE;
+                    String file = files.get(buffer.getInt(position)).name();
+                    if (!excluded.contains(file)) {
+                        postings.computeIfAbsent(file, f -> new ArrayList<>())
+                                .add(new Posting(term, buffer.getInt(position + Integer.BYTES), buffer.getInt(position + 2 * Integer.BYTES)));
+                    }
+                }
+            }
+            return postings;
+        }
+
+        private String termAt(int index) {
+            int termOffset = buffer.getInt(termTableStart + index * TERM_ENTRY_SIZE);
+            byte[] term = new byte[buffer.getShort(termOffset) & 0xFFFF];
+            buffer.get(termOffset + Short.BYTES, term);
+            return new String(term, StandardCharsets.UTF_8);
+        }
+    }
+}
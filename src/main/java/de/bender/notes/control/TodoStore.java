@@ -0,0 +1,151 @@
+package de.bender.notes.control;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Storage of the todo-file - new todos are simply appended (no matter how big the file already is) and done todos
+ * are removed by streaming the remaining ones into a temporary file which then atomically replaces the original
+ * (so a crash never leaves a half-written todo-file behind).
+ * <p/>
+ * Every modification holds an exclusive lock on a sidecar lock-file (the todo-file itself gets replaced, so it
+ * cannot carry the lock) - concurrent `notes todo` invocations are thereby serialized. Appends to the todo-file that
+ * don't go through this store (i.e. `notes add -f todo.md`) take the very same lock (see {@link NoteAppender}).
+ */
+@ApplicationScoped
+public class TodoStore {
+
+    public static final String OPEN_PREFIX = "- [ ]";
+    public static final String DONE_PREFIX = "- [X]";
+
+    private static final String LOCK_FILE_NAME = "todo.lock";
+
+    @Inject
+    NoteService notes;
+
+    @Inject
+    Config config;
+
+    /**
+     * Appends the given todo as open task to the todo-file
+     */
+    public synchronized void add(String todo) throws IOException {
+        Path todoFile = notes.ensureTodoFileExists();
+        try (FileChannel ignored = lock();
+             FileChannel channel = FileChannel.open(todoFile, READ, WRITE)) {
+            long end = channel.size();          // as we hold the lock nobody else appends in the meantime
+            String entry = OPEN_PREFIX + " " + todo + "\n";
+            if (end > 0 && !endsWithNewline(channel)) {
+                entry = "\n" + entry;           // don't glue the new todo to an unterminated last line
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                end += channel.write(bytes, end);
+            }
+        }
+    }
+
+    /**
+     * Removes all todos that are marked as done
+     *
+     * @return the number of removed todos
+     */
+    public synchronized int clearDone() throws IOException {
+        Path todoFile = notes.ensureTodoFileExists();
+        try (FileChannel ignored = lock()) {
+            Path tmp = Files.createTempFile(todoFile.getParent(), todoFile.getFileName().toString(), ".tmp");
+            int removed = 0;
+            try {
+                try (BufferedReader reader = Files.newBufferedReader(todoFile, StandardCharsets.UTF_8);
+                     BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (isDone(line)) {
+                            removed++;
+                        } else {
+                            writer.write(line);
+                            writer.write('\n');
+                        }
+                    }
+                }
+                if (removed > 0) {
+                    try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+                        channel.force(true);    // the content has to be durable before it replaces the original
+                    }
+                    Files.move(tmp, todoFile, REPLACE_EXISTING, ATOMIC_MOVE);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * @return true if the given file is the todo-file (as configured)
+     */
+    boolean isTodoFile(Path file) {
+        try {
+            return file.toAbsolutePath().normalize().equals(config.getTodoFilePath().toAbsolutePath().normalize());
+        } catch (IllegalStateException e) {
+            return false;                       // no todo-file configured at all
+        }
+    }
+
+    /**
+     * Executes the given write to the todo-file while holding the lock of this store - otherwise clearing the done
+     * todos could replace the file right after (and thereby lose) the write
+     */
+    synchronized void whileLocked(Write write) throws IOException {
+        try (FileChannel ignored = lock()) {
+            write.run();
+        }
+    }
+
+    /**
+     * A write to the todo-file
+     */
+    interface Write {
+        void run() throws IOException;
+    }
+
+    /*
+     * @return the channel holding the lock - closing it releases the lock
+     */
+    private FileChannel lock() throws IOException {
+        Path lockFile = config.getIndexPath().resolve(LOCK_FILE_NAME);
+        Files.createDirectories(lockFile.getParent());
+        FileChannel channel = FileChannel.open(lockFile, CREATE, WRITE);
+        try {
+            channel.lock();             // blocks until other processes are done
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean endsWithNewline(FileChannel channel) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, channel.size() - 1);
+        return last.get(0) == '\n';
+    }
+
+    static boolean isDone(String line) {
+        return line.startsWith(DONE_PREFIX) || line.startsWith(DONE_PREFIX.toLowerCase());
+    }
+}